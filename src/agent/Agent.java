@@ -1,13 +1,19 @@
 package agent;
 
+import network.ReplayLog;
+import network.ViewChannel;
+import pathfinding.BlockadeSet;
 import pathfinding.Coordinate;
 import pathfinding.Explore;
+import pathfinding.Orientation;
+import pathfinding.ResumableSearch;
 import pathfinding.State;
+import pathfinding.WaypointPlanner;
 
 import java.io.*;
-import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 
 /**
@@ -68,7 +74,7 @@ public class Agent {
     /**
      * The relative orientation of the agent.
      */
-    private char relativeAgentOrientation;
+    private int relativeAgentOrientation;
 
     /**
      * Agent inventory.
@@ -120,6 +126,41 @@ public class Agent {
      */
     private int priority;
 
+    /**
+     * How many of the next actions in the move buffer are checked against the world model before every move.
+     */
+    private static final int PLAN_VALIDATION_DEPTH = 8;
+
+    /**
+     * The agent's inventory (see inventorySignature) after the previous move. A change in inventory, like a change in
+     * the world model, may open up higher priority actions in the SAFE stage.
+     */
+    private int lastInventorySignature;
+
+    /**
+     * Where the agent spends its time, see getProfileReport.
+     */
+    private final MoveProfile profile = new MoveProfile();
+
+    /**
+     * The planning queries that found no path in the current version of the world model, see FailedQueries.
+     */
+    private final FailedQueries failedQueries = new FailedQueries();
+
+    /**
+     * The number of states a search for a path through a gold expands per turn, and in total over all the turns it is
+     * resumed in.
+     */
+    private static final int GOLD_SEARCH_BUDGET = 25000;
+    private static final int GOLD_SEARCH_LIMIT = 100000;
+
+    /**
+     * The searches for a path through each gold that ran out of expansions, kept so that they can be resumed on a later
+     * turn if the agent has not moved and the world model has not changed. Every search holds its own table and states,
+     * so the searches are dropped at the start of the first turn they can no longer be resumed in.
+     */
+    private final HashMap<Coordinate, ResumableSearch> goldSearches = new HashMap<>();
+
     /**
      * Constructor for the agent. Initializes values.
      */
@@ -127,7 +168,7 @@ public class Agent {
         worldModel = new WorldModel();
         relativeCoordX = 0;
         relativeCoordY = 0;
-        relativeAgentOrientation = 'W'; // we don't know which way we're facing (and it doesn't matter), so just arbitrarily choose the initial direction
+        relativeAgentOrientation = Orientation.WEST; // we don't know which way we're facing (and it doesn't matter), so just arbitrarily choose the initial direction
         moveBuffer = new ArrayList<>();
         currentStage = Stage.SAFE;
     }
@@ -148,7 +189,7 @@ public class Agent {
             return false;
         }
         ArrayList<State> path = Explore.findPath(
-                new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, new HashSet<>(), hasGold, hasKey, hasAxe, hasRaft, stage == Stage.WATER || (stage == Stage.LUMBERJACK && onRaft), dynamiteCount),
+                new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, BlockadeSet.EMPTY, hasGold, hasKey, hasAxe, hasRaft, stage == Stage.WATER || (stage == Stage.LUMBERJACK && onRaft), dynamiteCount),
                 new Coordinate(unexploredTile.x, unexploredTile.y),
                 worldModel,
                 stage);
@@ -170,8 +211,11 @@ public class Agent {
                     if (coordinate.x == relativeCoordX && coordinate.y == relativeCoordY) {
                         continue;   // the world model doesn't get updated until the agent actually moves, so when the agent picks up an item, the world model thinks the item is still there
                     }               // this makes sure the agent actually moves after picking up an item to allow the world model to update
+                    if (!worldModel.isReachable(new Coordinate(relativeCoordX, relativeCoordY), coordinate, hasKey, Stage.SAFE)) {
+                        continue;   // A* would have to exhaust the whole reachable area before giving up
+                    }
                     ArrayList<State> path = Explore.findPath(
-                            new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, new HashSet<>(), hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount),
+                            new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, BlockadeSet.EMPTY, hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount),
                             coordinate,
                             worldModel,
                             Stage.SAFE);
@@ -194,21 +238,25 @@ public class Agent {
     }
 
     /**
-     * Tries to find a path from the current position to the gold to home.
+     * Tries to find a path from the current position to the gold to home. Uses the waypoint planner first, then a
+     * search over the full state space for every known gold.
      */
     private void simpleSolutionExplore() {
         ArrayList<Coordinate> goldCoordinates = worldModel.getObjectTiles('$');
         if (goldCoordinates.size() == 0) {
             return;
         }
+        ArrayList<State> waypointPath = WaypointPlanner.findPath(
+                goldSearchStart(), worldModel);
+        if (waypointPath.size() != 0) {    // first plan which items to visit in which order, then fall back to a search over the full state space
+            moveBuffer = Explore.generateActions(waypointPath, worldModel);
+            return;
+        }
         for (Coordinate goldCoordinate : goldCoordinates) {
-            ArrayList<State> path = Explore.findPath(
-                    new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, new HashSet<>(), new Coordinate(relativeCoordX, relativeCoordY), hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount),
-                    new Coordinate(0, 0),
-                    worldModel,
-                    Stage.PLANNED,
-                    null,
-                    goldCoordinate);
+            if (hasFailed(MoveProfile.Step.SOLUTION_EXPLORE, goldCoordinate, Stage.PLANNED)) {
+                continue;
+            }
+            ArrayList<State> path = findGoldPath(goldCoordinate);
             if (path.size() != 0) {
                 moveBuffer = Explore.generateActions(path, worldModel);
                 return;
@@ -219,6 +267,49 @@ public class Agent {
         }
     }
 
+    /**
+     * Returns the state the searches for a path through the gold start from, both the waypoint planner's and
+     * findGoldPath's: the agent's current state, with the tile it stands on counted as a removed blockade so that the
+     * search can't pick up an item there again.
+     */
+    private State goldSearchStart() {
+        return new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, BlockadeSet.EMPTY, new Coordinate(relativeCoordX, relativeCoordY), hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount);
+    }
+
+    /**
+     * Searches for a path from the current position through the given gold to home. A search that runs out of
+     * expansions is kept and resumed with another GOLD_SEARCH_BUDGET expansions the next time the same path is asked
+     * for, as long as the agent has not moved and the world model has not changed, until it has expanded
+     * GOLD_SEARCH_LIMIT states. Only a search that can't find a path any more counts as failed.
+     *
+     * @param goldCoordinate the coordinates of the gold
+     * @return a list of states forming a path home through the gold, empty list if no path was found
+     */
+    private ArrayList<State> findGoldPath(Coordinate goldCoordinate) {
+        State startState = goldSearchStart();
+        ResumableSearch search = goldSearches.get(goldCoordinate);
+        if (search == null || !search.canResume(startState, worldModel)) {
+            search = Explore.startSearch(startState, new Coordinate(0, 0), worldModel, Stage.PLANNED, null, goldCoordinate);
+            if (search == null) {   // PLANNED stage searches are done by an algorithm that can't be resumed
+                goldSearches.remove(goldCoordinate);
+                ArrayList<State> path = Explore.findPath(startState, new Coordinate(0, 0), worldModel, Stage.PLANNED, null, goldCoordinate);
+                if (path.size() == 0) {
+                    fail(MoveProfile.Step.SOLUTION_EXPLORE, goldCoordinate, Stage.PLANNED);
+                }
+                return path;
+            }
+            goldSearches.put(goldCoordinate, search);
+        }
+        ArrayList<State> path = search.resume(GOLD_SEARCH_BUDGET);
+        if (path.size() != 0 || search.isExhausted() || search.getExpanded() >= GOLD_SEARCH_LIMIT) {
+            goldSearches.remove(goldCoordinate);
+            if (path.size() == 0) {
+                fail(MoveProfile.Step.SOLUTION_EXPLORE, goldCoordinate, Stage.PLANNED);
+            }
+        }
+        return path;
+    }
+
     /**
      * Tries to find a path from the current position to the gold to home. Does this by first finding a path to the gold while being as
      * dynamite efficient as possible, then it tries to find a path from the gold to home. First it checks the number of known dynamite in
@@ -244,7 +335,7 @@ public class Agent {
             int dynamiteAvailable = worldModel.getAvailableDynamiteCount(relativeCoordX, relativeCoordY);  // the number of known dynamites in the world
             for (int i = -dynamiteAvailable; i <= dynamiteCount; i++) {
                 ArrayList<State> pathToGold = Explore.findPath(
-                        new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, new HashSet<>(), new Coordinate(relativeCoordX, relativeCoordY), hasGold, hasKey, hasAxe, hasRaft, onRaft, i),
+                        new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, BlockadeSet.EMPTY, new Coordinate(relativeCoordX, relativeCoordY), hasGold, hasKey, hasAxe, hasRaft, onRaft, i),
                         goldCoordinate,
                         worldModel,
                         Stage.PLANNED,
@@ -278,8 +369,11 @@ public class Agent {
             return false;
         }
         for (Coordinate coordinate : treeStates) {
+            if (hasFailed(MoveProfile.Step.GET_RAFT, coordinate, Stage.PLANNED)) {
+                continue;
+            }
             ArrayList<State> path = Explore.findPath(
-                    new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, new HashSet<>(), hasGold, hasKey, hasAxe, false, false, -Integer.MAX_VALUE),
+                    new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, BlockadeSet.EMPTY, hasGold, hasKey, hasAxe, false, false, -Integer.MAX_VALUE),
                     coordinate,
                     worldModel,
                     Stage.PLANNED);
@@ -287,6 +381,7 @@ public class Agent {
                 moveBuffer = Explore.generateActions(path, worldModel);
                 return true;
             }
+            fail(MoveProfile.Step.GET_RAFT, coordinate, Stage.PLANNED);
         }
         return false;
     }
@@ -308,18 +403,22 @@ public class Agent {
      * @return true if a path was found, false otherwise
      */
     private boolean bomberman() {
-        ArrayList<Coordinate> dynamites = worldModel.getAllDynamites(new HashSet<>());
+        ArrayList<Coordinate> dynamites = worldModel.getAllDynamites(BlockadeSet.EMPTY);
         for (Coordinate dynamite : dynamites) {
             if (dynamite.x == relativeCoordX && dynamite.y == relativeCoordY) {
                 continue;
             }
+            if (hasFailed(MoveProfile.Step.BOMBERMAN, dynamite, Stage.BOMBERMAN)) {
+                continue;
+            }
             ArrayList<Coordinate> dynamiteCoordinates = Explore.leastDynamitePath(new State(relativeCoordX, relativeCoordY, relativeAgentOrientation), dynamite, worldModel);
             if (dynamiteCoordinates == null) {
+                fail(MoveProfile.Step.BOMBERMAN, dynamite, Stage.BOMBERMAN);
                 continue;
             }
             if (dynamiteCoordinates.size() <= dynamiteCount) {
                 ArrayList<State> path = Explore.findPath(
-                        new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, new HashSet<>(), hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount),
+                        new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, BlockadeSet.EMPTY, hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount),
                         dynamite,
                         worldModel,
                         Stage.BOMBERMAN,
@@ -330,6 +429,7 @@ public class Agent {
                     return true;
                 }
             }
+            fail(MoveProfile.Step.BOMBERMAN, dynamite, Stage.BOMBERMAN);
         }
         return false;
     }
@@ -340,7 +440,7 @@ public class Agent {
      */
     private boolean goHome() {
         ArrayList<State> path = Explore.findPath(
-                new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, new HashSet<>(), hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount),
+                new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, BlockadeSet.EMPTY, hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount),
                 new Coordinate(0, 0),
                 worldModel,
                 Stage.PLANNED);
@@ -348,15 +448,109 @@ public class Agent {
         return !moveBuffer.isEmpty();
     }
 
+    /**
+     * Checks the first few actions of the move buffer against the current world model. Walks the planned actions from
+     * the agent's position and verifies that every forward move enters a tile that can be entered and that every
+     * unlock, chop or blast is still aimed at the right kind of blockade. This is much cheaper than a new search and
+     * catches plans made with information that is no longer true.
+     *
+     * @return true if the checked part of the plan can still be executed, false otherwise
+     */
+    private boolean isPlanValid() {
+        int x = relativeCoordX;
+        int y = relativeCoordY;
+        int orientation = relativeAgentOrientation;
+        HashSet<Coordinate> blockadesRemoved = new HashSet<>();    // blockades removed by the checked part of the plan
+        for (int i = 0; i < Math.min(moveBuffer.size(), PLAN_VALIDATION_DEPTH); i++) {
+            int frontX = x + Orientation.xOffset(orientation);
+            int frontY = y + Orientation.yOffset(orientation);
+            char objectInFront = blockadesRemoved.contains(new Coordinate(frontX, frontY)) ? ' ' : worldModel.getObjectAtCoordinate(frontX, frontY);
+            switch (moveBuffer.get(i)) {
+                case 'F':
+                case 'f':
+                    if (objectInFront == '?' || objectInFront == '.' || objectInFront == '*' || objectInFront == 'T' || objectInFront == '-') {
+                        return false;
+                    }
+                    x = frontX;
+                    y = frontY;
+                    break;
+                case 'L':
+                case 'l':
+                    orientation = Orientation.turnLeft(orientation);
+                    break;
+                case 'R':
+                case 'r':
+                    orientation = Orientation.turnRight(orientation);
+                    break;
+                case 'U':
+                case 'u':
+                    if (objectInFront != '-') {
+                        return false;
+                    }
+                    blockadesRemoved.add(new Coordinate(frontX, frontY));
+                    break;
+                case 'C':
+                case 'c':
+                    if (objectInFront != 'T') {
+                        return false;
+                    }
+                    blockadesRemoved.add(new Coordinate(frontX, frontY));
+                    break;
+                case 'B':
+                case 'b':
+                    if (objectInFront != '*' && objectInFront != '-' && objectInFront != 'T') {
+                        return false;
+                    }
+                    blockadesRemoved.add(new Coordinate(frontX, frontY));
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a planning query from the agent's current position found no path before, without anything having
+     * changed since. Counts the skipped query in the profile.
+     *
+     * @param step the step asking the query
+     * @param goal the goal of the query
+     * @param stage the stage the query searches in
+     * @return true if the query can be skipped, false if it has to be searched
+     */
+    private boolean hasFailed(MoveProfile.Step step, Coordinate goal, Stage stage) {
+        if (failedQueries.hasFailed(worldModel.getVersion(), step, relativeCoordX, relativeCoordY, relativeAgentOrientation, goal, stage, inventorySignature())) {
+            profile.skip(step);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records that a planning query from the agent's current position found no path, see hasFailed.
+     */
+    private void fail(MoveProfile.Step step, Coordinate goal, Stage stage) {
+        failedQueries.fail(worldModel.getVersion(), step, relativeCoordX, relativeCoordY, relativeAgentOrientation, goal, stage, inventorySignature());
+    }
+
+    /**
+     * Packs the agent's inventory into an int so that changes can be detected with a single comparison.
+     *
+     * @return an int that changes whenever the inventory changes
+     */
+    private int inventorySignature() {
+        return (hasGold ? 1 : 0) | (hasKey ? 2 : 0) | (hasAxe ? 4 : 0) | (hasRaft ? 8 : 0) | (onRaft ? 16 : 0) | dynamiteCount << 5;
+    }
+
     /**
      * Updates the move buffer if necessary, then performs an action and updates the agent's state depending on the action.
      *
      * How the agent chooses what to do next:
      *  Start in SAFE stage.
      *  If move buffer is not empty:
+     *      If the next few moves can no longer be executed in the updated world model: Empty the move buffer.
      *      Choose next move from move buffer
      *  If move buffer is empty, generate new moves: (when a move is found, put it in the move buffer and stop looking for moves)
-     *      If currently in SAFE stage:
+     *      If currently in SAFE stage: (higher priority actions are also searched for if new tiles were seen or the inventory changed)
      *          If I have the gold and I can get home: Go home.
      *          If I can safely collect an item: Collect the item.
      *          If I can find somewhere to safely explore: Explore.
@@ -383,26 +577,81 @@ public class Agent {
      * @return the next action the agent is to perform
      */
     public char get_action( char view[][] ) {
-        worldModel.updateWorldModel(view, relativeCoordX, relativeCoordY, relativeAgentOrientation);
+        long start = System.nanoTime();
+        Stage stage = currentStage;
+        char action = nextAction(view);
+        profile.move(stage, System.nanoTime() - start);
+        return action;
+    }
+
+    /**
+     * Returns a compact report of how long the calls to get_action took and which stages and steps the time went to.
+     * Can be called at any time, usually at the end of a game.
+     *
+     * @return the report, several lines long
+     */
+    public String getProfileReport() {
+        return profile.report();
+    }
+
+    /**
+     * Returns a snapshot of the agent's world model as it is now, see WorldModel.snapshot. The snapshot can be read on
+     * another thread while the agent keeps playing.
+     *
+     * @return the snapshot
+     */
+    public WorldModel snapshotWorldModel() {
+        return worldModel.snapshot();
+    }
+
+    /**
+     * Does the work of get_action, see there.
+     *
+     * @param view what the agent perceived after the last action
+     * @return the next action the agent is to perform
+     */
+    private char nextAction( char view[][] ) {
+        boolean worldChanged = worldModel.updateWorldModel(view, relativeCoordX, relativeCoordY, relativeAgentOrientation) > 0;
+        if (!goldSearches.isEmpty()) {
+            State startState = goldSearchStart();
+            goldSearches.values().removeIf(search -> !search.canResume(startState, worldModel));
+        }
+
+        if (!moveBuffer.isEmpty() && !isPlanValid()) {
+            moveBuffer.clear();     // the plan was made with outdated information, search for a new one
+        }
+
+        // a higher priority action can only have become possible if something new was seen or the inventory changed
+        boolean newOpportunity = worldChanged || inventorySignature() != lastInventorySignature;
+        lastInventorySignature = inventorySignature();
 
         if (currentStage == Stage.SAFE) {   // the SAFE stage uses a priority system where a higher priority action can override a lower one
-            if (moveBuffer.isEmpty() || priority > 0) {
+            if (moveBuffer.isEmpty() || (priority > 0 && newOpportunity)) {
                 if (hasGold) {
                     //System.out.println("GO HOME");
-                    if (goHome()) {
+                    long start = System.nanoTime();
+                    boolean found = goHome();
+                    profile.step(MoveProfile.Step.GO_HOME, start, found);
+                    if (found) {
                         priority = 0;
                     }
                 }
             }
-            if (!onRaft && (moveBuffer.isEmpty() || priority > 1)) {
+            if (!onRaft && (moveBuffer.isEmpty() || (priority > 1 && newOpportunity))) {
                 //System.out.println("COLLECT");
-                if (collect()) {
+                long start = System.nanoTime();
+                boolean found = collect();
+                profile.step(MoveProfile.Step.COLLECT, start, found);
+                if (found) {
                     priority = 1;
                 }
             }
             if (moveBuffer.isEmpty()) {
                 //System.out.println("EXPLORE");
-                if (explore(Stage.SAFE)) {
+                long start = System.nanoTime();
+                boolean found = explore(Stage.SAFE);
+                profile.step(MoveProfile.Step.EXPLORE, start, found);
+                if (found) {
                     priority = 2;
                 }
             }
@@ -415,7 +664,9 @@ public class Agent {
         if (currentStage == Stage.PLANNED) {
             if (moveBuffer.isEmpty()) {
                 //System.out.println("SOLUTION EXPLORE");
-                    solutionExplore();
+                long start = System.nanoTime();
+                solutionExplore();
+                profile.step(MoveProfile.Step.SOLUTION_EXPLORE, start, !moveBuffer.isEmpty());
             }
             if (moveBuffer.isEmpty())  {
                 currentStage = Stage.WATER;
@@ -425,17 +676,24 @@ public class Agent {
         if (!hasExploredWater && currentStage == Stage.WATER) {
             if (moveBuffer.isEmpty() && !hasRaft && !onRaft) {
                 //System.out.println("GET RAFT");
-                if (getRaft()) {    // if we cut down a tree to get a raft, try to explore new areas before using the raft
+                long start = System.nanoTime();
+                boolean found = getRaft();
+                profile.step(MoveProfile.Step.GET_RAFT, start, found);
+                if (found) {    // if we cut down a tree to get a raft, try to explore new areas before using the raft
                     currentStage = Stage.SAFE;
                 }
             }
             if (moveBuffer.isEmpty() && hasRaft && !onRaft) {
                 //System.out.println("GO TO WATER");
+                long start = System.nanoTime();
                 goToWater();
+                profile.step(MoveProfile.Step.GO_TO_WATER, start, !moveBuffer.isEmpty());
             }
             if (moveBuffer.isEmpty() && onRaft) {
                 //System.out.println("WATER EXPLORE");
-                explore(Stage.WATER);
+                long start = System.nanoTime();
+                boolean found = explore(Stage.WATER);
+                profile.step(MoveProfile.Step.EXPLORE, start, found);
             }
             if (moveBuffer.isEmpty()) {
                 hasExploredWater = true;
@@ -451,7 +709,9 @@ public class Agent {
         if (currentStage == Stage.LUMBERJACK) {
             if (moveBuffer.isEmpty()) {
                 //System.out.println("LUMBERJACK EXPLORE");
-                explore(Stage.LUMBERJACK);
+                long start = System.nanoTime();
+                boolean found = explore(Stage.LUMBERJACK);
+                profile.step(MoveProfile.Step.EXPLORE, start, found);
             }
             if (moveBuffer.isEmpty())  {
                 currentStage = Stage.BOMBERMAN;
@@ -461,7 +721,10 @@ public class Agent {
         if (currentStage == Stage.BOMBERMAN) {
             if (moveBuffer.isEmpty()) {
                 //System.out.println("BOMBERMAN");
-                if (bomberman()) {
+                long start = System.nanoTime();
+                boolean found = bomberman();
+                profile.step(MoveProfile.Step.BOMBERMAN, start, found);
+                if (found) {
                     currentStage = Stage.SAFE;
                 }
             }
@@ -509,42 +772,16 @@ public class Agent {
                         hasRaft = false;    // if you cut down a tree right before stepping out of water, remove the tree from inventory
                     }
                 }
-                relativeCoordX += State.xOffset.get(relativeAgentOrientation);
-                relativeCoordY += State.yOffset.get(relativeAgentOrientation);
+                relativeCoordX += Orientation.xOffset(relativeAgentOrientation);
+                relativeCoordY += Orientation.yOffset(relativeAgentOrientation);
                 return ch;
             case 'L':
             case 'l':
-                switch (relativeAgentOrientation) {
-                    case 'N':
-                        relativeAgentOrientation = 'W';
-                        break;
-                    case 'W':
-                        relativeAgentOrientation = 'S';
-                        break;
-                    case 'S':
-                        relativeAgentOrientation = 'E';
-                        break;
-                    case 'E':
-                        relativeAgentOrientation = 'N';
-                        break;
-                }
+                relativeAgentOrientation = Orientation.turnLeft(relativeAgentOrientation);
                 return ch;
             case 'R':
             case 'r':
-                switch (relativeAgentOrientation) {
-                    case 'N':
-                        relativeAgentOrientation = 'E';
-                        break;
-                    case 'E':
-                        relativeAgentOrientation = 'S';
-                        break;
-                    case 'S':
-                        relativeAgentOrientation = 'W';
-                        break;
-                    case 'W':
-                        relativeAgentOrientation = 'N';
-                        break;
-                }
+                relativeAgentOrientation = Orientation.turnRight(relativeAgentOrientation);
                 return ch;
             case 'U':
             case 'u':
@@ -569,27 +806,39 @@ public class Agent {
 
     public static void main( String[] args )
     {
-        InputStream in  = null;
-        OutputStream out= null;
-        Socket socket   = null;
+        ViewChannel channel = null;
+        ReplayLog replayLog = null;
         Agent  agent    = new Agent();
         char   view[][] = new char[5][5];
         char   action;
+        boolean profile = false;
         int port;
-        int ch;
-        int i,j;
+        int k;
 
         if( args.length < 2 ) {
-            System.out.println("Usage: java agent.Agent -p <port>\n");
+            System.out.println("Usage: java agent.Agent -p <port> [-r <replay log>] [-t]\n");
             System.exit(-1);
         }
 
         port = Integer.parseInt( args[1] );
 
+        for( k = 2; k < args.length; k++ ) {
+            if(( args[k].equals("-r") )&&( k+1 < args.length )) {
+                try { // record every view and action, see network.ReplayLog
+                    replayLog = new ReplayLog( args[++k] );
+                }
+                catch( IOException e ) {
+                    System.out.println("Could not open replay log: "+ args[k] );
+                    System.exit(-1);
+                }
+            }
+            else if( args[k].equals("-t") ) { // print where the time went when the game ends
+                profile = true;
+            }
+        }
+
         try { // open socket to Game Engine
-            socket = new Socket( "localhost", port );
-            in  = socket.getInputStream();
-            out = socket.getOutputStream();
+            channel = ViewChannel.connect( "localhost", port );
         }
         catch( IOException e ) {
             System.out.println("Could not bind to port: "+port);
@@ -598,20 +847,18 @@ public class Agent {
 
         try { // scan 5-by-5 window around current location
             while( true ) {
-                for( i=0; i < 5; i++ ) {
-                    for( j=0; j < 5; j++ ) {
-                        if( !(( i == 2 )&&( j == 2 ))) {
-                            ch = in.read();
-                            if( ch == -1 ) {
-                                System.exit(-1);
-                            }
-                            view[i][j] = (char) ch;
-                        }
+                if( !channel.readView( view )) {
+                    if( profile ) {
+                        System.out.print( agent.getProfileReport() );
                     }
+                    System.exit(-1);
                 }
                 //agent.print_view( view ); // COMMENT THIS OUT BEFORE SUBMISSION
                 action = agent.get_action( view );
-                out.write( action );
+                if( replayLog != null ) {
+                    replayLog.record( view, action );
+                }
+                channel.writeAction( action );
             }
         }
         catch( IOException e ) {
@@ -620,7 +867,7 @@ public class Agent {
         }
         finally {
             try {
-                socket.close();
+                channel.close();
             }
             catch( IOException ignored) {}
         }
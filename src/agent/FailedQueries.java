@@ -0,0 +1,98 @@
+package agent;
+
+import pathfinding.Coordinate;
+
+import java.util.HashSet;
+import java.util.Objects;
+
+/**
+ * Remembers the planning queries that found no path since the world model last changed. Once the agent runs out of
+ * moves it goes through its stages again every turn, searching for a path to every gold, tree and dynamite each time,
+ * even when it has not moved and nothing new was seen. A query asked again from the same position and orientation, with
+ * the same inventory and the same version of the world model, gets the same answer, so it can be skipped.
+ *
+ * Every query is remembered for one version of the world model only: the first lookup or failure recorded with a newer
+ * version forgets everything.
+ */
+final class FailedQueries {
+
+    /**
+     * The version of the world model the failures were recorded with.
+     */
+    private long version = -1;
+
+    private final HashSet<Query> failed = new HashSet<>();
+
+    /**
+     * A planning query: which step asked it, where from, for what goal, in which stage and with which inventory.
+     */
+    private static final class Query {
+        private final MoveProfile.Step step;
+        private final int x, y, orientation;
+        private final Coordinate goal;
+        private final Agent.Stage stage;
+        private final int inventory;
+
+        Query(MoveProfile.Step step, int x, int y, int orientation, Coordinate goal, Agent.Stage stage, int inventory) {
+            this.step = step;
+            this.x = x;
+            this.y = y;
+            this.orientation = orientation;
+            this.goal = goal;
+            this.stage = stage;
+            this.inventory = inventory;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Query)) {
+                return false;
+            }
+            Query query = (Query) object;
+            return step == query.step && x == query.x && y == query.y && orientation == query.orientation &&
+                    goal.equals(query.goal) && stage == query.stage && inventory == query.inventory;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(step, x, y, orientation, goal, stage, inventory);
+        }
+    }
+
+    /**
+     * Forgets every failure if the world model has changed since they were recorded.
+     */
+    private void checkVersion(long version) {
+        if (version != this.version) {
+            failed.clear();
+            this.version = version;
+        }
+    }
+
+    /**
+     * Returns whether the given query found no path in the given version of the world model.
+     *
+     * @param version the current version of the world model
+     * @param step the step asking the query
+     * @param x the relative x coordinate of the agent
+     * @param y the relative y coordinate of the agent
+     * @param orientation the relative orientation of the agent
+     * @param goal the goal of the query
+     * @param stage the stage the query searches in
+     * @param inventory the agent's inventory, see Agent.inventorySignature
+     * @return true if the query can be skipped, false if it has to be searched
+     */
+    boolean hasFailed(long version, MoveProfile.Step step, int x, int y, int orientation, Coordinate goal, Agent.Stage stage, int inventory) {
+        checkVersion(version);
+        return failed.contains(new Query(step, x, y, orientation, goal, stage, inventory));
+    }
+
+    /**
+     * Records that the given query found no path in the given version of the world model. See hasFailed for the
+     * parameters.
+     */
+    void fail(long version, MoveProfile.Step step, int x, int y, int orientation, Coordinate goal, Agent.Stage stage, int inventory) {
+        checkVersion(version);
+        failed.add(new Query(step, x, y, orientation, goal, stage, inventory));
+    }
+}
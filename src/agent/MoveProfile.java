@@ -0,0 +1,146 @@
+package agent;
+
+/**
+ * Keeps track of where the agent spends its time. Every call to get_action is put in a latency histogram and counted
+ * against the stage the agent was in when the call started, and every step the agent tries while deciding on a move
+ * (exploring, collecting items, planning a solution and so on) is counted with how often it found a path and how long
+ * it took. Recording is a few array increments and a call to System.nanoTime, so the profile is always on.
+ *
+ * The histogram has one bucket per power of two nanoseconds, which is precise enough to see the tail latency that
+ * makes the agent time out, without keeping every sample.
+ */
+final class MoveProfile {
+
+    /**
+     * The steps the agent tries in get_action.
+     */
+    enum Step {
+        GO_HOME("goHome"),
+        COLLECT("collect"),
+        EXPLORE("explore"),
+        SOLUTION_EXPLORE("solutionExplore"),
+        GET_RAFT("getRaft"),
+        GO_TO_WATER("goToWater"),
+        BOMBERMAN("bomberman");
+
+        private final String label;
+
+        Step(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Bucket i counts the calls that took less than 2^i nanoseconds, but at least 2^(i-1).
+     */
+    private final long[] histogram = new long[64];
+    private long moves;
+    private long totalNanos;
+    private long slowestNanos;
+    private long slowestMove;
+
+    private final long[] stageMoves = new long[Agent.Stage.values().length];
+    private final long[] stageNanos = new long[Agent.Stage.values().length];
+
+    private final long[] stepCalls = new long[Step.values().length];
+    private final long[] stepSuccesses = new long[Step.values().length];
+    private final long[] stepNanos = new long[Step.values().length];
+    private final long[] stepSlowestNanos = new long[Step.values().length];
+    private final long[] stepSkipped = new long[Step.values().length];
+
+    /**
+     * Records one call to get_action.
+     *
+     * @param stage the stage the agent was in when the call started
+     * @param nanos how long the call took
+     */
+    void move(Agent.Stage stage, long nanos) {
+        histogram[64 - Long.numberOfLeadingZeros(nanos)]++;
+        moves++;
+        totalNanos += nanos;
+        if (nanos > slowestNanos) {
+            slowestNanos = nanos;
+            slowestMove = moves;
+        }
+        stageMoves[stage.ordinal()]++;
+        stageNanos[stage.ordinal()] += nanos;
+    }
+
+    /**
+     * Records one step of get_action.
+     *
+     * @param step the step that was tried
+     * @param start the value of System.nanoTime when the step started
+     * @param found whether the step found a path
+     */
+    void step(Step step, long start, boolean found) {
+        long nanos = System.nanoTime() - start;
+        stepCalls[step.ordinal()]++;
+        if (found) {
+            stepSuccesses[step.ordinal()]++;
+        }
+        stepNanos[step.ordinal()] += nanos;
+        if (nanos > stepSlowestNanos[step.ordinal()]) {
+            stepSlowestNanos[step.ordinal()] = nanos;
+        }
+    }
+
+    /**
+     * Records a query of a step that was skipped because it is known to find no path.
+     */
+    void skip(Step step) {
+        stepSkipped[step.ordinal()]++;
+    }
+
+    /**
+     * Returns the smallest power of two nanoseconds that at least the given fraction of the calls took less than, or
+     * the slowest call if that is smaller.
+     */
+    private long percentile(double fraction) {
+        long rank = (long) Math.ceil(moves * fraction);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return Math.min(1L << i, slowestNanos);
+            }
+        }
+        return slowestNanos;
+    }
+
+    /**
+     * Formats a duration in nanoseconds as microseconds or milliseconds, whichever is more readable.
+     */
+    private static String time(long nanos) {
+        return nanos < 10000000 ? nanos / 1000 + " us" : nanos / 1000000 + " ms";
+    }
+
+    /**
+     * Returns a compact report of everything recorded so far.
+     */
+    String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("get_action: %d calls, %s total, p50 < %s, p99 < %s, p99.9 < %s, slowest %s (move %d)%n",
+                moves, time(totalNanos), time(percentile(0.5)), time(percentile(0.99)), time(percentile(0.999)), time(slowestNanos), slowestMove));
+        report.append("latency:");
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] != 0) {
+                report.append(" <").append(time(1L << i)).append(':').append(histogram[i]);
+            }
+        }
+        report.append(String.format("%n%-16s %8s %10s%n", "stage", "moves", "time"));
+        for (Agent.Stage stage : Agent.Stage.values()) {
+            if (stageMoves[stage.ordinal()] != 0) {
+                report.append(String.format("%-16s %8d %10s%n", stage, stageMoves[stage.ordinal()], time(stageNanos[stage.ordinal()])));
+            }
+        }
+        report.append(String.format("%-16s %8s %8s %10s %10s %8s%n", "step", "calls", "found", "time", "slowest", "skipped"));
+        for (Step step : Step.values()) {
+            if (stepCalls[step.ordinal()] != 0) {
+                report.append(String.format("%-16s %8d %8d %10s %10s %8d%n", step.label, stepCalls[step.ordinal()], stepSuccesses[step.ordinal()],
+                        time(stepNanos[step.ordinal()]), time(stepSlowestNanos[step.ordinal()]), stepSkipped[step.ordinal()]));
+            }
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,228 @@
+package agent;
+
+/**
+ * Bitboard representation of the world model. Every terrain class has its own bitset with one bit per tile, and one
+ * extra bitset marks which tiles are known. Each row of the world is padded to a whole number of 64-bit words, so
+ * moving a set of tiles one step east or west is a shift of every word (carrying the bit from the neighbouring word),
+ * and moving it north or south is an offset of one row. This lets flood fills expand 64 tiles at a time instead of
+ * walking the tiles one by one.
+ *
+ * The layers cover the whole world model with the same absolute coordinates as WorldChunks. When the world grows, the
+ * world model builds new layers of the new size.
+ */
+class TerrainLayers {
+
+    /**
+     * The height of the world in tiles.
+     */
+    private final int height;
+
+    /**
+     * Number of 64-bit words used to store one row of the world.
+     */
+    final int wordsPerRow;
+
+    /**
+     * The tile symbols that have their own layer. The index of a symbol in this string is the index of its layer.
+     */
+    private static final String SYMBOLS = " ~.*T-$kad";
+
+    /**
+     * One bitset per symbol in SYMBOLS.
+     */
+    private final long[][] layers;
+
+    /**
+     * Bitset of all the tiles that have been seen.
+     */
+    private final long[] known;
+
+    /**
+     * Bitset of all the tiles that are inside the world (the padding bits at the end of every row are not set).
+     */
+    private final long[] inside;
+
+    TerrainLayers(int width, int height) {
+        this.height = height;
+        wordsPerRow = (width + 63) / 64;
+        layers = new long[SYMBOLS.length()][height * wordsPerRow];
+        known = new long[height * wordsPerRow];
+        inside = new long[height * wordsPerRow];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                set(inside, x, y);
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of the given layers that can be updated without changing them.
+     */
+    TerrainLayers(TerrainLayers layers) {
+        height = layers.height;
+        wordsPerRow = layers.wordsPerRow;
+        this.layers = new long[layers.layers.length][];
+        for (int i = 0; i < this.layers.length; i++) {
+            this.layers[i] = layers.layers[i].clone();
+        }
+        known = layers.known.clone();
+        inside = layers.inside;     // never changes
+    }
+
+    /**
+     * Moves a tile from the layer of its old symbol to the layer of its new symbol and marks it as known.
+     *
+     * @param x the absolute x coordinate of the tile
+     * @param y the absolute y coordinate of the tile
+     * @param oldSymbol the symbol previously stored in the tile
+     * @param newSymbol the symbol now stored in the tile
+     */
+    void update(int x, int y, char oldSymbol, char newSymbol) {
+        int oldLayer = SYMBOLS.indexOf(oldSymbol);
+        if (oldLayer >= 0) {
+            clear(layers[oldLayer], x, y);
+        }
+        int newLayer = SYMBOLS.indexOf(newSymbol);
+        if (newLayer >= 0) {
+            set(layers[newLayer], x, y);
+        }
+        set(known, x, y);
+    }
+
+    /**
+     * Returns the layer of the given symbol. The returned array must not be modified.
+     *
+     * @param symbol the tile symbol
+     * @return the bitset of all tiles with the given symbol
+     */
+    long[] layer(char symbol) {
+        return layers[SYMBOLS.indexOf(symbol)];
+    }
+
+    /**
+     * Builds a bitset of every tile the agent may stand on, according to the passability table of WorldModel.
+     *
+     * @param hasKey if the agent has the key
+     * @param stage which stage the agent is currently in
+     * @return a bitset of every tile that is not blocked
+     */
+    long[] passable(boolean hasKey, Agent.Stage stage) {
+        long[] passable = new long[known.length];
+        for (int i = 0; i < SYMBOLS.length(); i++) {
+            if (WorldModel.isBlockade(SYMBOLS.charAt(i), hasKey, stage)) {
+                continue;
+            }
+            for (int j = 0; j < passable.length; j++) {
+                passable[j] |= layers[i][j];
+            }
+        }
+        return passable;
+    }
+
+    /**
+     * Uses a word-parallel flood fill to find every tile reachable from the given tile through passable tiles. The
+     * start tile is always reachable, even if it is not passable itself. Only the rows between minRow and maxRow are
+     * filled, every passable tile must lie within them.
+     *
+     * @param x the absolute x coordinate of the start tile
+     * @param y the absolute y coordinate of the start tile
+     * @param passable a bitset of every tile that can be entered
+     * @param minRow the first row that can contain a passable tile
+     * @param maxRow the last row that can contain a passable tile
+     * @return a bitset of every reachable tile
+     */
+    long[] floodFill(int x, int y, long[] passable, int minRow, int maxRow) {
+        long[] reachable = new long[passable.length];
+        set(reachable, x, y);
+        minRow = Math.max(minRow, 1);
+        maxRow = Math.min(maxRow, height - 2);
+        boolean changed = true;
+        boolean forward = true;
+        while (changed) {   // alternate the sweep direction so growth travels both north and south in few passes
+            changed = false;
+            for (int k = minRow; k <= maxRow; k++) {
+                int row = forward ? k : minRow + maxRow - k;
+                for (int w = 0; w < wordsPerRow; w++) {
+                    int i = row * wordsPerRow + w;
+                    long grown = dilateRow(reachable, i, w) | reachable[i - wordsPerRow] | reachable[i + wordsPerRow];
+                    grown = reachable[i] | (grown & passable[i]);
+                    if (grown != reachable[i]) {
+                        reachable[i] = grown;
+                        changed = true;
+                    }
+                }
+            }
+            forward = !forward;
+        }
+        return reachable;
+    }
+
+    /**
+     * Builds a bitset of every tile where, if the agent stood in it, unknown tiles would be revealed (a tile with a
+     * question mark in the 5x5 square centered on it). Only the rows between minRow and maxRow are computed.
+     *
+     * @param minRow the first row to compute
+     * @param maxRow the last row to compute
+     * @return a bitset of the unexplored tiles
+     */
+    long[] unexplored(int minRow, int maxRow) {
+        long[] horizontal = new long[known.length];
+        for (int row = Math.max(minRow - 2, 0); row <= Math.min(maxRow + 2, height - 1); row++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                int i = row * wordsPerRow + w;
+                long unknown = inside[i] & ~known[i];
+                long east = unknown << 1 | (w > 0 ? (inside[i - 1] & ~known[i - 1]) >>> 63 : 0);
+                long west = unknown >>> 1 | (w < wordsPerRow - 1 ? (inside[i + 1] & ~known[i + 1]) << 63 : 0);
+                long east2 = unknown << 2 | (w > 0 ? (inside[i - 1] & ~known[i - 1]) >>> 62 : 0);
+                long west2 = unknown >>> 2 | (w < wordsPerRow - 1 ? (inside[i + 1] & ~known[i + 1]) << 62 : 0);
+                horizontal[i] = unknown | east | west | east2 | west2;
+            }
+        }
+        long[] unexplored = new long[known.length];
+        for (int row = Math.max(minRow, 0); row <= Math.min(maxRow, height - 1); row++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                long bits = 0;
+                for (int d = -2; d <= 2; d++) {
+                    if (row + d >= 0 && row + d < height) {
+                        bits |= horizontal[(row + d) * wordsPerRow + w];
+                    }
+                }
+                unexplored[row * wordsPerRow + w] = bits & inside[row * wordsPerRow + w];
+            }
+        }
+        return unexplored;
+    }
+
+    /**
+     * Returns the word at index i of the given bitset, moved one tile east and one tile west within its row.
+     */
+    private long dilateRow(long[] bits, int i, int w) {
+        long east = bits[i] << 1 | (w > 0 ? bits[i - 1] >>> 63 : 0);
+        long west = bits[i] >>> 1 | (w < wordsPerRow - 1 ? bits[i + 1] << 63 : 0);
+        return east | west;
+    }
+
+    boolean get(long[] bits, int x, int y) {
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    void set(long[] bits, int x, int y) {
+        bits[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+    }
+
+    void clear(long[] bits, int x, int y) {
+        bits[y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+    }
+
+    /**
+     * Returns whether the two bitsets have a tile in common.
+     */
+    static boolean intersects(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & b[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
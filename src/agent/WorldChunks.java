@@ -0,0 +1,161 @@
+package agent;
+
+import java.util.Arrays;
+
+/**
+ * Sparse tile storage of the world model. The world is cut into square chunks of CHUNK_SIZE x CHUNK_SIZE tiles, and a
+ * chunk is only allocated when the first tile in it is revealed, so the memory used grows with the explored area
+ * rather than with the size of the world. A tile in a chunk that has not been allocated is unknown ('?').
+ *
+ * Coordinates are absolute: 0, 0 is the north west corner of the world. Reading a tile outside the world is allowed and
+ * returns '?', writing one is not. The world can be grown in any direction, which moves the chunks but never copies a
+ * tile.
+ *
+ * A snapshot shares all chunks with the storage it was taken from. Chunks are copied on write: the first time a chunk
+ * is written after a snapshot was taken, the storage writes to its own copy and the snapshot keeps the old one.
+ */
+class WorldChunks {
+
+    /**
+     * Chunks are 1 << CHUNK_BITS tiles wide and high.
+     */
+    static final int CHUNK_BITS = 4;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The chunks row by row, null for a chunk that has not been allocated.
+     */
+    private char[][] chunks;
+
+    /**
+     * The size of the world in chunks.
+     */
+    private int columns, rows;
+
+    /**
+     * For every chunk, the value of generation when this storage allocated or copied it. A chunk with an older stamp
+     * may be shared with a snapshot.
+     */
+    private int[] stamps;
+
+    /**
+     * The number of snapshots taken of this storage.
+     */
+    private int generation;
+
+    private int allocatedChunks;
+
+    /**
+     * @param columns the width of the world in chunks
+     * @param rows the height of the world in chunks
+     */
+    WorldChunks(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        chunks = new char[columns * rows][];
+        stamps = new int[columns * rows];
+    }
+
+    /**
+     * Returns a snapshot of the storage, which shares every chunk with it. Costs one copy of the chunk directory.
+     */
+    WorldChunks snapshot() {
+        WorldChunks snapshot = new WorldChunks(0, 0);
+        snapshot.columns = columns;
+        snapshot.rows = rows;
+        snapshot.chunks = chunks.clone();
+        snapshot.stamps = new int[chunks.length];
+        snapshot.generation = 1;    // none of the chunks belong to the snapshot
+        snapshot.allocatedChunks = allocatedChunks;
+        generation++;
+        return snapshot;
+    }
+
+    /**
+     * Returns the tile at the given absolute coordinates, '?' if it has not been revealed or lies outside the world.
+     */
+    char get(int x, int y) {
+        if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight()) {
+            return '?';
+        }
+        char[] chunk = chunks[(y >> CHUNK_BITS) * columns + (x >> CHUNK_BITS)];
+        return chunk == null ? '?' : chunk[(y & CHUNK_MASK) << CHUNK_BITS | x & CHUNK_MASK];
+    }
+
+    /**
+     * Stores a tile, allocating its chunk if this is the first tile revealed in it.
+     *
+     * @param x the absolute x coordinate, within the world
+     * @param y the absolute y coordinate, within the world
+     * @param symbol the symbol to store
+     * @return the symbol previously stored in the tile
+     */
+    char set(int x, int y, char symbol) {
+        int index = (y >> CHUNK_BITS) * columns + (x >> CHUNK_BITS);
+        char[] chunk = chunks[index];
+        if (chunk == null) {
+            if (symbol == '?') {
+                return '?';
+            }
+            chunk = new char[CHUNK_SIZE * CHUNK_SIZE];
+            Arrays.fill(chunk, '?');
+            chunks[index] = chunk;
+            stamps[index] = generation;
+            allocatedChunks++;
+        } else if (stamps[index] != generation) {  // the chunk may be shared with a snapshot
+            chunk = chunk.clone();
+            chunks[index] = chunk;
+            stamps[index] = generation;
+        }
+        int offset = (y & CHUNK_MASK) << CHUNK_BITS | x & CHUNK_MASK;
+        char oldSymbol = chunk[offset];
+        chunk[offset] = symbol;
+        return oldSymbol;
+    }
+
+    /**
+     * Returns whether the chunk containing the given absolute tile coordinates has been allocated. A tile in a chunk
+     * that has not been allocated is unknown, so scans can skip the whole chunk.
+     */
+    boolean isAllocated(int x, int y) {
+        return chunks[(y >> CHUNK_BITS) * columns + (x >> CHUNK_BITS)] != null;
+    }
+
+    /**
+     * Adds the given number of empty chunks on each side of the world. The tiles keep their contents, but their
+     * absolute coordinates move by west * CHUNK_SIZE and north * CHUNK_SIZE.
+     */
+    void grow(int west, int north, int east, int south) {
+        int newColumns = west + columns + east;
+        int newRows = north + rows + south;
+        char[][] newChunks = new char[newColumns * newRows][];
+        int[] newStamps = new int[newColumns * newRows];
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(chunks, row * columns, newChunks, (north + row) * newColumns + west, columns);
+            System.arraycopy(stamps, row * columns, newStamps, (north + row) * newColumns + west, columns);
+        }
+        chunks = newChunks;
+        stamps = newStamps;
+        columns = newColumns;
+        rows = newRows;
+    }
+
+    /**
+     * Returns the width of the world in tiles.
+     */
+    int getWidth() {
+        return columns << CHUNK_BITS;
+    }
+
+    /**
+     * Returns the height of the world in tiles.
+     */
+    int getHeight() {
+        return rows << CHUNK_BITS;
+    }
+
+    int getAllocatedChunks() {
+        return allocatedChunks;
+    }
+}
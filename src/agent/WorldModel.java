@@ -1,116 +1,344 @@
 package agent;
 
+import pathfinding.BlockadeSet;
 import pathfinding.Coordinate;
+import pathfinding.Orientation;
 import pathfinding.State;
 
 import java.util.*;
 
 /**
  * This class keeps a map of all the area the agent has explored.
+ *
+ * Every change to the map gives the world model a new version. A snapshot (see snapshot) is a read-only copy of the
+ * world model at one version, which a search running on another thread can use while the agent keeps updating the
+ * world model.
  */
 public class WorldModel {
 
     /**
-     * A 2D ArrayList to keep track of the world
+     * The tiles of the world, stored in chunks that are allocated when the first tile in them is revealed.
      */
-    private ArrayList<ArrayList<Character>> world;
+    private final WorldChunks world;
 
     /**
-     * The maximum size of the world is 80x80 and the agent can start anywhere within it.
-     * This world size ensures that no matter where the agent starts, it has enough room to maneuver
-     * without getting an IndexOutOfBoundsException.
+     * The world starts out INITIAL_CHUNKS chunks wide and high with the agent in the middle. Since the agent can start
+     * anywhere in a map of any size, the world grows whenever the agent's view gets within GROWTH_MARGIN tiles of an
+     * edge, at least doubling in that direction. The margin keeps the unknown tiles next to the explored area inside
+     * the world, so the agent can tell that there is more to explore.
      */
-    public static final int WORLD_WIDTH = 164;
-    public static final int WORLD_HEIGHT = 164;
+    private static final int INITIAL_CHUNKS = 4;
+    private static final int GROWTH_MARGIN = 4;
 
     /**
      * The base coordinates are used together with the relative coordinates of the agent to update the
-     * map when the agent moves around.
-     * The base coordinates of the agent are in the middle of the world.
+     * map when the agent moves around. They are the absolute coordinates of the agent's start, and move when the
+     * world grows to the west or north.
      */
-    private static final int baseCoordX = WORLD_WIDTH / 2;
-    private static final int baseCoordY = WORLD_HEIGHT / 2;
+    private int baseCoordX, baseCoordY;
 
     /**
      * Keeps track of the upper and lower bounds of coordinates that have been explored. This makes updating
-     * the map go faster and also allows for printing only the explored part of the map, not the entire 164x164 world.
+     * the map go faster and also allows for printing only the explored part of the map, not the entire world.
      */
-    private int minExploredX = WORLD_WIDTH, minExploredY = WORLD_HEIGHT, maxExploredX = 0, maxExploredY = 0;
+    private int minExploredX = Integer.MAX_VALUE / 2, minExploredY = Integer.MAX_VALUE / 2, maxExploredX = Integer.MIN_VALUE / 2, maxExploredY = Integer.MIN_VALUE / 2;
 
     /**
-     * Constructor for the world model. Adds question marks to all squares on the map.
+     * Bitboard copy of the world, used to answer reachability questions many tiles at a time.
+     */
+    private TerrainLayers terrainLayers;
+
+    /**
+     * If the terrain layers are shared with a snapshot, in which case they are copied before they are changed.
+     */
+    private boolean terrainLayersShared;
+
+    /**
+     * The number of calls to updateWorldModel that changed a tile.
+     */
+    private long version;
+
+    /**
+     * If this world model is a snapshot, which can't be updated.
+     */
+    private final boolean snapshot;
+
+    /**
+     * For every orientation, the world offsets (relative to the agent) of the 25 cells of the agent's view.
+     */
+    private static final int[][] VIEW_X_OFFSETS = new int[4][25];
+    private static final int[][] VIEW_Y_OFFSETS = new int[4][25];
+
+    static {
+        for (int orientation = 0; orientation < 4; orientation++) {
+            buildViewOffsets(orientation, VIEW_X_OFFSETS[orientation], VIEW_Y_OFFSETS[orientation]);
+        }
+    }
+
+    /**
+     * The relative coordinates of the tiles changed by the last call to updateWorldModel, stored as x, y pairs. At most
+     * the 24 tiles of one view can change at once.
+     */
+    private final int[] changedTiles = new int[2 * 24];
+    private int changedTileCount;
+
+    /**
+     * Constructor for the world model. Every tile starts out unknown.
      */
     WorldModel() {
-        world = new ArrayList<>();
-        for (int i = 0; i < WORLD_HEIGHT; i++) {
-            world.add(new ArrayList<>());
-            for (int j = 0; j < WORLD_WIDTH; j++) {
-                world.get(i).add('?');
+        world = new WorldChunks(INITIAL_CHUNKS, INITIAL_CHUNKS);
+        baseCoordX = world.getWidth() / 2;
+        baseCoordY = world.getHeight() / 2;
+        terrainLayers = new TerrainLayers(world.getWidth(), world.getHeight());
+        snapshot = false;
+    }
+
+    /**
+     * Creates a snapshot of the given world model, see snapshot().
+     */
+    private WorldModel(WorldModel worldModel) {
+        world = worldModel.world.snapshot();
+        baseCoordX = worldModel.baseCoordX;
+        baseCoordY = worldModel.baseCoordY;
+        minExploredX = worldModel.minExploredX;
+        minExploredY = worldModel.minExploredY;
+        maxExploredX = worldModel.maxExploredX;
+        maxExploredY = worldModel.maxExploredY;
+        terrainLayers = worldModel.terrainLayers;
+        worldModel.terrainLayersShared = true;
+        System.arraycopy(worldModel.changedTiles, 0, changedTiles, 0, 2 * worldModel.changedTileCount);
+        changedTileCount = worldModel.changedTileCount;
+        version = worldModel.version;
+        snapshot = true;
+    }
+
+    /**
+     * Returns a read-only copy of the world model as it is now. The copy does not change when this world model is
+     * updated, so it can be searched on another thread. Taking a snapshot is cheap: the chunks of the map are shared
+     * until this world model writes to them, and the bitboards are only copied when a tile next changes.
+     *
+     * @return the snapshot
+     */
+    public WorldModel snapshot() {
+        return new WorldModel(this);
+    }
+
+    /**
+     * Returns the version of the world model, which goes up every time a tile changes. Two world models with the same
+     * version, for example a world model and a snapshot of it, have the same map.
+     *
+     * @return the version of the world model
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Grows the world if the view of an agent standing at the given coordinates would come within GROWTH_MARGIN tiles
+     * of an edge.
+     *
+     * @param relativeCoordX the relative x coordinate of the agent
+     * @param relativeCoordY the relative y coordinate of the agent
+     */
+    private void makeRoom(int relativeCoordX, int relativeCoordY) {
+        int reach = 2 + GROWTH_MARGIN;
+        int x = baseCoordX + relativeCoordX;
+        int y = baseCoordY + relativeCoordY;
+        int columns = world.getWidth() / WorldChunks.CHUNK_SIZE;
+        int rows = world.getHeight() / WorldChunks.CHUNK_SIZE;
+        int west = x - reach < 0 ? Math.max(columns, chunksFor(reach - x)) : 0;
+        int east = x + reach >= world.getWidth() ? Math.max(columns, chunksFor(x + reach - world.getWidth() + 1)) : 0;
+        int north = y - reach < 0 ? Math.max(rows, chunksFor(reach - y)) : 0;
+        int south = y + reach >= world.getHeight() ? Math.max(rows, chunksFor(y + reach - world.getHeight() + 1)) : 0;
+        if (west + east + north + south == 0) {
+            return;
+        }
+        world.grow(west, north, east, south);
+        int dx = west * WorldChunks.CHUNK_SIZE;
+        int dy = north * WorldChunks.CHUNK_SIZE;
+        baseCoordX += dx;
+        baseCoordY += dy;
+        minExploredX += dx;
+        maxExploredX += dx;
+        minExploredY += dy;
+        maxExploredY += dy;
+
+        terrainLayers = new TerrainLayers(world.getWidth(), world.getHeight());   // the bitboards are laid out by row, so they are rebuilt
+        terrainLayersShared = false;
+        for (int i = minExploredY; i <= maxExploredY; i++) {
+            for (int j = minExploredX; j <= maxExploredX; j++) {
+                if (!world.isAllocated(j, i)) {
+                    j |= WorldChunks.CHUNK_SIZE - 1;    // nothing is known in this chunk, skip to the next one
+                    continue;
+                }
+                char symbol = world.get(j, i);
+                if (symbol != '?') {
+                    terrainLayers.update(j, i, '?', symbol);
+                }
             }
         }
     }
 
     /**
-     * Updates the world model given the view of the agent.
+     * Returns the number of chunks needed to hold the given number of tiles.
+     */
+    private static int chunksFor(int tiles) {
+        return (tiles + WorldChunks.CHUNK_SIZE - 1) / WorldChunks.CHUNK_SIZE;
+    }
+
+    /**
+     * Updates the world model given the view of the agent. The view is written straight into the world using the
+     * offset tables of the agent's orientation, and the tiles whose symbol changed are recorded (see getChangedTileCount).
      *
      * @param view what the agent perceived after the last action
      * @param relativeCoordX the relative x coordinate of the agent
      * @param relativeCoordY the relative y coordinate of the agent
      * @param relativeAgentOrientation the relative orientation of the agent
+     * @return the number of tiles whose symbol changed
+     * @throws IllegalStateException if this world model is a snapshot
      */
-    void updateWorldModel(char[][] view, int relativeCoordX, int relativeCoordY, char relativeAgentOrientation) {
-        view = rotateView(view, relativeAgentOrientation);
+    int updateWorldModel(char[][] view, int relativeCoordX, int relativeCoordY, int relativeAgentOrientation) {
+        if (snapshot) {
+            throw new IllegalStateException("A snapshot of the world model can't be updated");
+        }
+        makeRoom(relativeCoordX, relativeCoordY);
+        int agentX = baseCoordX + relativeCoordX;
+        int agentY = baseCoordY + relativeCoordY;
+        int[] xOffsets = VIEW_X_OFFSETS[relativeAgentOrientation];
+        int[] yOffsets = VIEW_Y_OFFSETS[relativeAgentOrientation];
+        changedTileCount = 0;
         for (int i = 0; i < 5; i++) {
             for (int j = 0; j < 5; j++) {
                 if (i == 2 && j == 2) {
                     continue;   // ignore agent position
                 }
-                world.get(baseCoordY + relativeCoordY + i - 2).set(baseCoordX + relativeCoordX + j - 2, view[i][j]);
-                if (baseCoordY + relativeCoordY + i - 2 < minExploredY) {
-                    minExploredY = baseCoordY + relativeCoordY + i - 2;
-                } else if (baseCoordY + relativeCoordY + i - 2 > maxExploredY) {
-                    maxExploredY = baseCoordY + relativeCoordY + i - 2;
-                }
-                if (baseCoordX + relativeCoordX + j - 2 < minExploredX) {
-                    minExploredX = baseCoordX + relativeCoordX + j - 2;
-                } else if (baseCoordX + relativeCoordX + j - 2 > maxExploredX) {
-                    maxExploredX = baseCoordX + relativeCoordX + j - 2;
+                int x = agentX + xOffsets[i * 5 + j];
+                int y = agentY + yOffsets[i * 5 + j];
+                char oldSymbol = world.set(x, y, view[i][j]);
+                if (oldSymbol != view[i][j]) {
+                    if (terrainLayersShared) {
+                        terrainLayers = new TerrainLayers(terrainLayers);
+                        terrainLayersShared = false;
+                    }
+                    terrainLayers.update(x, y, oldSymbol, view[i][j]);
+                    changedTiles[2 * changedTileCount] = x - baseCoordX;
+                    changedTiles[2 * changedTileCount + 1] = y - baseCoordY;
+                    changedTileCount++;
                 }
             }
         }
+        minExploredX = Math.min(minExploredX, agentX - 2);
+        maxExploredX = Math.max(maxExploredX, agentX + 2);
+        minExploredY = Math.min(minExploredY, agentY - 2);
+        maxExploredY = Math.max(maxExploredY, agentY + 2);
+        if (changedTileCount > 0) {
+            version++;
+        }
         //printWorld(relativeCoordX, relativeCoordY, relativeAgentOrientation);
+        return changedTileCount;
     }
 
     /**
-     * When the agent rotates around we have to make sure that what the agent perceives
-     * is aligned to the same direction every time.
+     * Returns the number of tiles whose symbol changed in the last call to updateWorldModel. Together with
+     * getChangedTileX and getChangedTileY this lets a cache refresh only the tiles that changed, without allocating.
      *
-     * @param view what the agent perceived after the last action
-     * @param relativeAgentOrientation the relative orientation of the agent
-     * @return the view, rotated north
+     * @return the number of changed tiles
      */
-    private char[][] rotateView(char[][] view, char relativeAgentOrientation) {
-        if (relativeAgentOrientation == 'N') {
-            return view;
-        }
-        int degrees = 0;
-        if (relativeAgentOrientation == 'W') {
-            degrees = 270;
-        } else if (relativeAgentOrientation == 'S') {
-            degrees = 180;
-        } else if (relativeAgentOrientation == 'E') {
-            degrees = 90;
+    public int getChangedTileCount() {
+        return changedTileCount;
+    }
+
+    /**
+     * Returns the relative x coordinate of a tile changed by the last call to updateWorldModel.
+     *
+     * @param i the index of the changed tile, less than getChangedTileCount()
+     * @return the relative x coordinate of the tile
+     */
+    public int getChangedTileX(int i) {
+        return changedTiles[2 * i];
+    }
+
+    /**
+     * Returns the relative y coordinate of a tile changed by the last call to updateWorldModel.
+     *
+     * @param i the index of the changed tile, less than getChangedTileCount()
+     * @return the relative y coordinate of the tile
+     */
+    public int getChangedTileY(int i) {
+        return changedTiles[2 * i + 1];
+    }
+
+    /**
+     * Builds the offset tables of one orientation: where each cell of the view lies in the world, relative to the
+     * agent. The agent always sees the world as if it were facing north, so the view is rotated clockwise once for
+     * every quarter turn between the agent's orientation and north.
+     *
+     * @param orientation the orientation of the agent
+     * @param xOffsets receives the x offset of every cell of the view, indexed by row * 5 + column
+     * @param yOffsets receives the y offset of every cell of the view, indexed by row * 5 + column
+     */
+    private static void buildViewOffsets(int orientation, int[] xOffsets, int[] yOffsets) {
+        int turns = (4 - orientation) & 3;
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5; j++) {
+                int row = i, column = j;
+                for (int k = 0; k < turns; k++) {   // a clockwise turn moves the cell in row r, column c to row c, column 4 - r
+                    int rotatedColumn = 4 - row;
+                    row = column;
+                    column = rotatedColumn;
+                }
+                xOffsets[i * 5 + j] = column - 2;
+                yOffsets[i * 5 + j] = row - 2;
+            }
         }
-        for (int k = 0; k < degrees / 90; k++) {
-            char newView[][] = new char[5][5];
-            for (int i = 0; i < 5; i++) {
-                for (int j = 0; j < 5; j++) {
-                    newView[i][j] = view[5 - j - 1][i];
+    }
+
+    /**
+     * Precomputed passability table indexed by tile symbol. Bit (2 * stage + (hasKey ? 1 : 0)) of an entry is set if the
+     * symbol is a blockade for the agent in that stage with that inventory. Replaces building a list of blockade symbols
+     * on every check, since these checks are done for every node expanded by the search algorithms. Symbols outside
+     * the table are not part of the game and count as blockades, see isBlockade.
+     */
+    private static final int[] blockedMasks = new int[128];
+
+    static {
+        for (Agent.Stage stage : Agent.Stage.values()) {
+            for (int key = 0; key < 2; key++) {
+                String blockades = "~.*T-?";
+                if (stage == Agent.Stage.LUMBERJACK) {
+                    blockades = ".*-?";
+                }
+                if (key == 1) {
+                    blockades = blockades.replace("-", "");
+                }
+                if (stage == Agent.Stage.WATER) {
+                    blockades = " .*T-?$kad";
+                }
+                for (int i = 0; i < blockades.length(); i++) {
+                    blockedMasks[blockades.charAt(i)] |= 1 << blockedBit(stage, key == 1);
                 }
             }
-            view = newView;
         }
-    return view;
+    }
+
+    /**
+     * Returns which bit of the passability table holds the given stage and inventory.
+     */
+    private static int blockedBit(Agent.Stage stage, boolean hasKey) {
+        return 2 * stage.ordinal() + (hasKey ? 1 : 0);
+    }
+
+    /**
+     * Returns whether the given symbol is a blockade for the agent in the given stage with the given inventory. A
+     * symbol the game does not use, such as a byte of 128 or more in a corrupt view, is a blockade in every stage.
+     *
+     * @param symbol the tile symbol
+     * @param hasKey if the agent has the key
+     * @param stage which stage the agent is currently in
+     * @return true if the symbol is a blockade, false otherwise
+     */
+    static boolean isBlockade(char symbol, boolean hasKey, Agent.Stage stage) {
+        return symbol >= blockedMasks.length || (blockedMasks[symbol] >>> blockedBit(stage, hasKey) & 1) != 0;
     }
 
     /**
@@ -119,12 +347,13 @@ public class WorldModel {
      * @param relativeCoordX the relative x coordinate of the agent
      * @param relativeCoordY the relative y coordinate of the agent
      * @param relativeAgentOrientation the relative orientation of the agent
-     * @param blockadesRemoved a HashSet of the blockades that have been removed
+     * @param blockadesRemoved the blockades that have been removed
      * @return true if the agent is blocked, false otherwise
      */
-    public boolean agentBlocked(int relativeCoordX, int relativeCoordY, char relativeAgentOrientation, HashSet<Coordinate> blockadesRemoved) {
-        ArrayList<Character> blockades = new ArrayList<>(Arrays.asList('~', '.', '*', 'T', '-', '?'));
-        return blockades.contains(world.get(baseCoordY + relativeCoordY + State.yOffset.get(relativeAgentOrientation)).get(baseCoordX + relativeCoordX + State.xOffset.get(relativeAgentOrientation))) && !blockadesRemoved.contains(new Coordinate(relativeCoordX + State.xOffset.get(relativeAgentOrientation), relativeCoordY + State.yOffset.get(relativeAgentOrientation)));
+    public boolean agentBlocked(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation, BlockadeSet blockadesRemoved) {
+        int x = relativeCoordX + Orientation.xOffset(relativeAgentOrientation);
+        int y = relativeCoordY + Orientation.yOffset(relativeAgentOrientation);
+        return isBlockade(getObjectAtCoordinate(x, y), false, Agent.Stage.SAFE) && !blockadesRemoved.contains(x, y);
     }
 
     /**
@@ -133,22 +362,55 @@ public class WorldModel {
      * @param relativeCoordX the relative x coordinate of the agent
      * @param relativeCoordY the relative y coordinate of the agent
      * @param hasKey if the agent has the key
-     * @param blockadesRemoved a HashSet of the blockades that have been removed
+     * @param blockadesRemoved the blockades that have been removed
      * @param stage which stage the agent is currently in
      * @return true if the position if blocked, false otherwise
      */
-    public boolean positionBlocked(int relativeCoordX, int relativeCoordY, boolean hasKey, HashSet<Coordinate> blockadesRemoved, Agent.Stage stage) {
-        ArrayList<Character> blockades = new ArrayList<>(Arrays.asList('~', '.', '*', 'T', '-', '?'));
-        if (stage == Agent.Stage.LUMBERJACK) {
-            blockades = new ArrayList<>(Arrays.asList('.', '*', '-', '?'));
-        }
-        if (hasKey) {
-            blockades.remove((Character)'-');
-        }
-        if (stage == Agent.Stage.WATER) {
-            blockades = new ArrayList<>(Arrays.asList(' ', '.', '*', 'T', '-', '?', '$', 'k', 'a', 'd'));
-        }
-        return blockades.contains(getObjectAtCoordinate(relativeCoordX, relativeCoordY)) && !blockadesRemoved.contains(new Coordinate(relativeCoordX, relativeCoordY));
+    public boolean positionBlocked(int relativeCoordX, int relativeCoordY, boolean hasKey, BlockadeSet blockadesRemoved, Agent.Stage stage) {
+        return positionBlocked(relativeCoordX, relativeCoordY, hasKey, stage) && !blockadesRemoved.contains(relativeCoordX, relativeCoordY);
+    }
+
+    /**
+     * Returns whether a position is blocked or not, assuming no blockades have been removed.
+     *
+     * @param relativeCoordX the relative x coordinate of the agent
+     * @param relativeCoordY the relative y coordinate of the agent
+     * @param hasKey if the agent has the key
+     * @param stage which stage the agent is currently in
+     * @return true if the position if blocked, false otherwise
+     */
+    public boolean positionBlocked(int relativeCoordX, int relativeCoordY, boolean hasKey, Agent.Stage stage) {
+        return isBlockade(getObjectAtCoordinate(relativeCoordX, relativeCoordY), hasKey, stage);
+    }
+
+    /**
+     * Returns whether the goal coordinate can be reached from the start coordinate by walking through tiles that are
+     * not blocked according to positionBlocked. Uses a flood fill over the terrain bitboards.
+     *
+     * @param start the relative coordinate to start from
+     * @param goal the relative coordinate to reach
+     * @param hasKey if the agent has the key
+     * @param stage which stage the agent is currently in
+     * @return true if there is a path of unblocked tiles from start to goal, false otherwise
+     */
+    public boolean isReachable(Coordinate start, Coordinate goal, boolean hasKey, Agent.Stage stage) {
+        long[] reachable = terrainLayers.floodFill(baseCoordX + start.x, baseCoordY + start.y, terrainLayers.passable(hasKey, stage), minExploredY, maxExploredY);
+        return terrainLayers.get(reachable, baseCoordX + goal.x, baseCoordY + goal.y);
+    }
+
+    /**
+     * Returns whether an unexplored tile (see isUnexplored) other than the start coordinate can be reached from the
+     * start coordinate by walking through tiles that are not blocked according to positionBlocked.
+     *
+     * @param start the relative coordinate to start from
+     * @param hasKey if the agent has the key
+     * @param stage which stage the agent is currently in
+     * @return true if an unexplored tile is reachable, false otherwise
+     */
+    public boolean isUnexploredTileReachable(Coordinate start, boolean hasKey, Agent.Stage stage) {
+        long[] reachable = terrainLayers.floodFill(baseCoordX + start.x, baseCoordY + start.y, terrainLayers.passable(hasKey, stage), minExploredY, maxExploredY);
+        terrainLayers.clear(reachable, baseCoordX + start.x, baseCoordY + start.y);
+        return TerrainLayers.intersects(reachable, terrainLayers.unexplored(minExploredY, maxExploredY));
     }
 
     /**
@@ -158,7 +420,7 @@ public class WorldModel {
      * @param relativeCoordY the relative y coordinate of the agent
      * @param relativeAgentOrientation the relative orientation of the agent
      */
-    private void printWorld(int relativeCoordX, int relativeCoordY, char relativeAgentOrientation) {
+    private void printWorld(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation) {
         int minX = minExploredX;
         int minY = minExploredY;
         int maxX = maxExploredX + 1;
@@ -166,22 +428,9 @@ public class WorldModel {
         for (int i = minY; i < maxY; i++) {
             for (int j = minX; j < maxX; j++) {
                 if (baseCoordY + relativeCoordY == i && baseCoordX + relativeCoordX == j) {
-                    switch (relativeAgentOrientation) {
-                        case 'N':
-                            System.out.print("^");
-                            break;
-                        case 'W':
-                            System.out.print("<");
-                            break;
-                        case 'S':
-                            System.out.print("v");
-                            break;
-                        case 'E':
-                            System.out.print(">");
-                            break;
-                    }
+                    System.out.print("^<v>".charAt(relativeAgentOrientation));
                 } else {
-                    System.out.print(world.get(i).get(j));
+                    System.out.print(world.get(j, i));
                 }
             }
             System.out.println();
@@ -198,7 +447,7 @@ public class WorldModel {
     public boolean isUnexplored(Coordinate coordinate) {
         for (int i = 0; i < 5; i++) {
             for (int j = 0; j < 5; j++) {
-                if (world.get(baseCoordY + coordinate.y + i - 2).get(baseCoordX + coordinate.x + j - 2) == '?') {   // if there is a question mark in the 5x5 area around tile
+                if (world.get(baseCoordX + coordinate.x + j - 2, baseCoordY + coordinate.y + i - 2) == '?') {   // if there is a question mark in the 5x5 area around tile
                     return true;
                 }
             }
@@ -212,18 +461,54 @@ public class WorldModel {
      * @param objectType which object to search for
      * @return list with coordinates of all tiles with the given object
      */
-    ArrayList<Coordinate> getObjectTiles(Character objectType) {
+    public ArrayList<Coordinate> getObjectTiles(Character objectType) {
         ArrayList<Coordinate> objectTiles = new ArrayList<>();
+        long[] layer = terrainLayers.layer(objectType);
         for (int i = minExploredY; i < maxExploredY + 1; i++) {
-            for (int j = minExploredX; j < maxExploredX + 1; j++) {
-                if (world.get(i).get(j) == objectType) {
+            for (int w = 0; w < terrainLayers.wordsPerRow; w++) {
+                long bits = layer[i * terrainLayers.wordsPerRow + w];
+                while (bits != 0) {     // visit the set bits from lowest to highest, i.e. from west to east
+                    int j = w * 64 + Long.numberOfTrailingZeros(bits);
                     objectTiles.add(new Coordinate(j - baseCoordX, i - baseCoordY));
+                    bits &= bits - 1;
                 }
             }
         }
         return objectTiles;
     }
 
+    /**
+     * Returns the manhattan length of a tour that starts at the given coordinate and visits every known dynamite that
+     * has not been picked up, in the order getAllDynamites returns them. Does not allocate.
+     *
+     * @param relativeCoordX the relative x coordinate the tour starts at
+     * @param relativeCoordY the relative y coordinate the tour starts at
+     * @param blockadesRemoved the blockades that have been removed, including picked up dynamites
+     * @return the length of the tour, 0 if there are no dynamites left
+     */
+    public int getDynamiteTourLength(int relativeCoordX, int relativeCoordY, BlockadeSet blockadesRemoved) {
+        long[] layer = terrainLayers.layer('d');
+        int length = 0;
+        int lastX = relativeCoordX, lastY = relativeCoordY;
+        for (int i = minExploredY; i < maxExploredY + 1; i++) {
+            for (int w = 0; w < terrainLayers.wordsPerRow; w++) {
+                long bits = layer[i * terrainLayers.wordsPerRow + w];
+                while (bits != 0) {
+                    int x = w * 64 + Long.numberOfTrailingZeros(bits) - baseCoordX;
+                    int y = i - baseCoordY;
+                    bits &= bits - 1;
+                    if (blockadesRemoved.contains(x, y)) {
+                        continue;
+                    }
+                    length += Math.abs(x - lastX) + Math.abs(y - lastY);
+                    lastX = x;
+                    lastY = y;
+                }
+            }
+        }
+        return length;
+    }
+
     /**
      * Returns a list with coordinates of all tiles with the given object, sorted by distance from the current state
      *
@@ -245,8 +530,8 @@ public class WorldModel {
      * @param relativeAgentOrientation the relative orientation
      * @return the object in front of the given coordinate
      */
-    public char getObjectInFront(int relativeCoordX, int relativeCoordY, char relativeAgentOrientation) {
-        return world.get(baseCoordY + relativeCoordY + State.yOffset.get(relativeAgentOrientation)).get(baseCoordX + relativeCoordX + State.xOffset.get(relativeAgentOrientation));
+    public char getObjectInFront(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation) {
+        return world.get(baseCoordX + relativeCoordX + Orientation.xOffset(relativeAgentOrientation), baseCoordY + relativeCoordY + Orientation.yOffset(relativeAgentOrientation));
     }
 
     /**
@@ -257,7 +542,37 @@ public class WorldModel {
      * @return the object at the given coordinate
      */
     public char getObjectAtCoordinate(int relativeCoordX, int relativeCoordY) {
-        return world.get(baseCoordY + relativeCoordY).get(baseCoordX + relativeCoordX);
+        return world.get(baseCoordX + relativeCoordX, baseCoordY + relativeCoordY);
+    }
+
+    /**
+     * Returns the number of tiles in the world. Together with getTileIndex, getTileX and getTileY this lets a search
+     * keep data for every tile in a flat array. The number of tiles and their indexes change when the world grows,
+     * which only happens in updateWorldModel.
+     *
+     * @return the number of tiles in the world
+     */
+    public int getTileCount() {
+        return world.getWidth() * world.getHeight();
+    }
+
+    /**
+     * Returns the index of a tile, see getTileCount. Indexes go row by row, from west to east.
+     *
+     * @param relativeCoordX the relative x coordinate, within the world
+     * @param relativeCoordY the relative y coordinate, within the world
+     * @return the index of the tile
+     */
+    public int getTileIndex(int relativeCoordX, int relativeCoordY) {
+        return (baseCoordY + relativeCoordY) * world.getWidth() + baseCoordX + relativeCoordX;
+    }
+
+    public int getTileX(int index) {
+        return index % world.getWidth() - baseCoordX;
+    }
+
+    public int getTileY(int index) {
+        return index / world.getWidth() - baseCoordY;
     }
 
     /**
@@ -267,10 +582,14 @@ public class WorldModel {
      */
     public ArrayList<Coordinate> getExploredTiles() {
         ArrayList<Coordinate> coordinates = new ArrayList<>();
-        for (int i = minExploredY - WORLD_HEIGHT/2; i < maxExploredY - WORLD_HEIGHT/2 + 1; i++) {
-            for (int j = minExploredX - WORLD_WIDTH/2; j < maxExploredX - WORLD_WIDTH/2 + 1; j++) {
-                if (getObjectAtCoordinate(j, i) != '?') {
-                    coordinates.add(new Coordinate(j, i));
+        for (int i = minExploredY; i <= maxExploredY; i++) {
+            for (int j = minExploredX; j <= maxExploredX; j++) {
+                if (!world.isAllocated(j, i)) {
+                    j |= WorldChunks.CHUNK_SIZE - 1;    // nothing is known in this chunk, skip to the next one
+                    continue;
+                }
+                if (world.get(j, i) != '?') {
+                    coordinates.add(new Coordinate(j - baseCoordX, i - baseCoordY));
                 }
             }
         }
@@ -284,11 +603,9 @@ public class WorldModel {
      */
     int getAvailableDynamiteCount(int relativeCoordX, int relativeCoordY) {
         int availableDynamite = 0;
-        for (int i = minExploredY - WORLD_HEIGHT/2; i < maxExploredY - WORLD_HEIGHT/2 + 1; i++) {
-            for (int j = minExploredX - WORLD_WIDTH/2; j < maxExploredX - WORLD_WIDTH/2 + 1; j++) {
-                if (getObjectAtCoordinate(j, i) == 'd' && !(j == relativeCoordX && i == relativeCoordY)) {
-                    availableDynamite++;
-                }
+        for (Coordinate dynamite : getObjectTiles('d')) {
+            if (!(dynamite.x == relativeCoordX && dynamite.y == relativeCoordY)) {
+                availableDynamite++;
             }
         }
         return availableDynamite;
@@ -297,17 +614,13 @@ public class WorldModel {
     /**
      * Returns a list with coordinates to every known dynamite.
      *
-     * @param blockadesRemoved a HashSet of the blockades that have been removed
+     * @param blockadesRemoved the blockades that have been removed
      * @return a list with coordinates to every known dynamite
      */
-    public ArrayList<Coordinate> getAllDynamites(HashSet<Coordinate> blockadesRemoved) {
-        ArrayList<Coordinate> dynamites = new ArrayList<>();
-        for (int i = minExploredY - WORLD_HEIGHT/2; i < maxExploredY - WORLD_HEIGHT/2 + 1; i++) {
-            for (int j = minExploredX - WORLD_WIDTH/2; j < maxExploredX - WORLD_WIDTH/2 + 1; j++) {
-                if (getObjectAtCoordinate(j, i) == 'd' && !blockadesRemoved.contains(new Coordinate(j, i))) {
-                    dynamites.add(new Coordinate(j, i));
-                }
-            }
+    public ArrayList<Coordinate> getAllDynamites(BlockadeSet blockadesRemoved) {
+        ArrayList<Coordinate> dynamites = getObjectTiles('d');
+        if (!blockadesRemoved.isEmpty()) {
+            dynamites.removeIf(blockadesRemoved::contains);
         }
         return dynamites;
     }
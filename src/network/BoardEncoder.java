@@ -0,0 +1,204 @@
+package network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Converts boards between the plain text format and a run-length encoded format, which the game engine also loads.
+ * Large boards are mostly long runs of water, walls and land, so the encoded file is a fraction of the size of the
+ * text file, and the engine fills every run into its grid in one go instead of looking at every tile.
+ *
+ * An encoded board starts with Raft.RLE_MAGIC. A text board never contains a 0 byte, so the engine can tell the two
+ * formats apart by their first bytes. After the magic come the number of rows, the length of every row, and then the
+ * rows one after another, each as a sequence of runs: a count followed by the symbol repeated that many times. All
+ * numbers are unsigned LEB128 (7 bits per byte, low bits first, the high bit set on every byte but the last) and every
+ * symbol is one byte, like in the text format.
+ */
+public class BoardEncoder {
+
+    /**
+     * Splits a text board into rows, the way the game engine reads it: one row per line, up to the first empty line.
+     *
+     * @param text the contents of a text board file
+     * @return the board, indexed by row then column
+     */
+    static char[][] parseText(byte[] text) {
+        ArrayList<char[]> rows = new ArrayList<>();
+        int pos = 0;
+        while (pos < text.length) {
+            int end = pos;
+            while (end < text.length && text[end] != '\n') {
+                end++;
+            }
+            int length = end - pos;
+            if (length > 0 && text[end - 1] == '\r') {
+                length--;
+            }
+            if (length == 0) {
+                break;
+            }
+            rows.add(new String(text, pos, length, StandardCharsets.ISO_8859_1).toCharArray());
+            pos = end + 1;
+        }
+        return rows.toArray(new char[0][]);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Reads a number written by writeVarint, for decode and for the game engine, which reads encoded boards itself.
+     *
+     * @throws IllegalArgumentException if the number does not fit in a non-negative int
+     * @throws java.nio.BufferUnderflowException if the number is cut off
+     */
+    static int readVarint(ByteBuffer bytes) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = bytes.get();
+            if (shift == 28 && (b & 0xF8) != 0) {   // the fifth byte holds the last 3 bits and ends the number
+                throw new IllegalArgumentException("Bad number in encoded board");
+            }
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Encodes a board.
+     *
+     * @param board the board, indexed by row then column; rows may have different lengths
+     * @return the encoded board
+     */
+    public static byte[] encode(char[][] board) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Raft.RLE_MAGIC, 0, Raft.RLE_MAGIC.length);
+        writeVarint(out, board.length);
+        for (char[] row : board) {
+            writeVarint(out, row.length);
+        }
+        for (char[] row : board) {
+            for (int c = 0; c < row.length; ) {
+                int run = 1;
+                while (c + run < row.length && row[c + run] == row[c]) {
+                    run++;
+                }
+                writeVarint(out, run);
+                out.write(row[c]);
+                c += run;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a board.
+     *
+     * @param encoded the encoded board
+     * @return the board, indexed by row then column
+     * @throws IllegalArgumentException if the bytes are not an encoded board, with the same checks of the header the
+     * game engine does before it allocates the board
+     */
+    public static char[][] decode(byte[] encoded) {
+        if (!isEncoded(encoded)) {
+            throw new IllegalArgumentException("Not an encoded board");
+        }
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(encoded, Raft.RLE_MAGIC.length, encoded.length - Raft.RLE_MAGIC.length);
+            int rows = readVarint(bytes);
+            if (rows > bytes.remaining() / 3) {     // every row takes its length and at least one run
+                throw new IllegalArgumentException("More rows than the encoded board can hold");
+            }
+            int[] rowLengths = new int[rows];
+            int maxLength = 0;
+            for (int r = 0; r < rows; r++) {
+                rowLengths[r] = readVarint(bytes);
+                if (rowLengths[r] == 0) {
+                    throw new IllegalArgumentException("Empty row");
+                }
+                maxLength = Math.max(maxLength, rowLengths[r]);
+            }
+            if (rows > bytes.remaining() / 2 || Raft.map_cells(rows, maxLength) > Raft.MAX_MAP_CELLS) {
+                throw new IllegalArgumentException("Rows do not fit in the encoded board or in memory");
+            }
+            char[][] board = new char[rows][];
+            for (int r = 0; r < rows; r++) {
+                board[r] = new char[rowLengths[r]];
+            }
+            for (char[] row : board) {
+                for (int c = 0; c < row.length; ) {
+                    int run = readVarint(bytes);
+                    char symbol = (char) (bytes.get() & 0xFF);
+                    if (run == 0 || run > row.length - c) {
+                        throw new IllegalArgumentException("Run does not fit in its row");
+                    }
+                    Arrays.fill(row, c, c + run, symbol);
+                    c += run;
+                }
+            }
+            return board;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Encoded board is cut short");
+        }
+    }
+
+    /**
+     * Returns whether the given file contents are an encoded board.
+     */
+    static boolean isEncoded(byte[] contents) {
+        return contents.length >= Raft.RLE_MAGIC.length && Arrays.equals(Arrays.copyOf(contents, Raft.RLE_MAGIC.length), Raft.RLE_MAGIC);
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java network.BoardEncoder <board file>...");
+        System.out.println("Encodes every text board (x.in becomes x.rle) and decodes every encoded board (x.rle becomes x.in).");
+        System.exit(-1);
+    }
+
+    /**
+     * Converts the given board files, in whichever direction they need.
+     *
+     * @param args see printUsage
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            printUsage();
+        }
+        for (String fileName : args) {
+            Path input = Paths.get(fileName);
+            try {
+                byte[] contents = Files.readAllBytes(input);
+                boolean encoded = isEncoded(contents);
+                byte[] converted = encoded
+                        ? BoardGenerator.toText(decode(contents)).getBytes(StandardCharsets.ISO_8859_1)
+                        : encode(parseText(contents));
+                String name = input.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                Path output = input.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + (encoded ? ".in" : ".rle"));
+                Files.write(output, converted);
+                System.out.println(fileName + " (" + contents.length + " bytes) -> " + output + " (" + converted.length + " bytes)");
+            } catch (IOException e) {
+                System.out.println("Could not convert " + fileName + ": " + e.getMessage());
+                System.exit(-1);
+            } catch (IllegalArgumentException e) {
+                System.out.println(fileName + ": " + e.getMessage());
+                System.exit(-1);
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package network;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Generates random boards for the game engine. A board is surrounded by water, has lakes and wall segments inside,
+ * and has the agent, the gold, and the given number of doors, trees and dynamite placed on random land tiles. A key is
+ * added if there are doors and an axe if there are trees. The same size, densities, counts and seed always give the
+ * same board, so a board that causes trouble can be recreated from the seed alone.
+ *
+ * The generator only keeps boards where the gold, the key and the axe can be reached from the start without crossing
+ * water or walls, treating doors and trees as open. This rules out boards that are obviously unsolvable, but not every
+ * unsolvable board.
+ */
+public class BoardGenerator {
+
+    /**
+     * The largest number of rows or columns a board can have, which is what the agent's world model is made for.
+     */
+    public static final int MAX_SIZE = 80;
+
+    /**
+     * The smallest number of rows or columns a board can have.
+     */
+    public static final int MIN_SIZE = 6;
+
+    /**
+     * How many boards are generated for one seed before giving up on finding one where everything can be reached.
+     */
+    private static final int MAX_ATTEMPTS = 1000;
+
+    private final int width, height;
+    private final double wallDensity, waterDensity;
+    private final int doors, trees, dynamites;
+
+    /**
+     * @param width the number of columns, the water border included
+     * @param height the number of rows, the water border included
+     * @param wallDensity the fraction of the tiles inside the border that are walls
+     * @param waterDensity the fraction of the tiles inside the border that are water
+     * @param doors the number of doors
+     * @param trees the number of trees
+     * @param dynamites the number of dynamite
+     */
+    public BoardGenerator(int width, int height, double wallDensity, double waterDensity, int doors, int trees, int dynamites) {
+        if (width < MIN_SIZE || width > MAX_SIZE || height < MIN_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("The board must be between " + MIN_SIZE + "x" + MIN_SIZE + " and " + MAX_SIZE + "x" + MAX_SIZE);
+        }
+        if (wallDensity < 0 || waterDensity < 0 || wallDensity + waterDensity > 0.8) {
+            throw new IllegalArgumentException("Walls and water can cover at most 80% of the board");
+        }
+        if (doors < 0 || trees < 0 || dynamites < 0 || doors + trees + dynamites + 4 > (width - 2) * (height - 2) * (1 - wallDensity - waterDensity)) {
+            throw new IllegalArgumentException("There is not enough land for all the items");
+        }
+        this.width = width;
+        this.height = height;
+        this.wallDensity = wallDensity;
+        this.waterDensity = waterDensity;
+        this.doors = doors;
+        this.trees = trees;
+        this.dynamites = dynamites;
+    }
+
+    /**
+     * Generates a board.
+     *
+     * @param seed the seed of the random number generator
+     * @return the board, indexed by row then column
+     * @throws IllegalStateException if no board where everything can be reached was found
+     */
+    public char[][] generate(long seed) {
+        Random random = new Random(seed);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            char[][] board = layOut(random);
+            if (isReachable(board)) {
+                return board;
+            }
+        }
+        throw new IllegalStateException("Could not generate a board where everything can be reached, try less walls or water");
+    }
+
+    /**
+     * Lays out one board: the border, then the lakes, then the walls, then the items.
+     */
+    private char[][] layOut(Random random) {
+        char[][] board = new char[height][width];
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                board[r][c] = r == 0 || c == 0 || r == height - 1 || c == width - 1 ? '~' : ' ';
+            }
+        }
+        int inside = (width - 2) * (height - 2);
+
+        int water = (int) (waterDensity * inside);
+        while (water > 0) {     // lakes are random walks, so they come out as blobs rather than single tiles
+            int r = 1 + random.nextInt(height - 2);
+            int c = 1 + random.nextInt(width - 2);
+            for (int steps = Math.min(water, 4 + random.nextInt(Math.max(1, inside / 20))); steps > 0; steps--) {
+                if (board[r][c] == ' ') {
+                    board[r][c] = '~';
+                    water--;
+                }
+                switch (random.nextInt(4)) {
+                    case 0: r = Math.max(1, r - 1); break;
+                    case 1: r = Math.min(height - 2, r + 1); break;
+                    case 2: c = Math.max(1, c - 1); break;
+                    default: c = Math.min(width - 2, c + 1);
+                }
+            }
+        }
+
+        int walls = (int) (wallDensity * inside);
+        while (walls > 0) {     // walls are short straight segments, which makes corridors and rooms
+            int r = 1 + random.nextInt(height - 2);
+            int c = 1 + random.nextInt(width - 2);
+            boolean horizontal = random.nextBoolean();
+            for (int length = 2 + random.nextInt(5); length > 0 && walls > 0 && r < height - 1 && c < width - 1; length--) {
+                if (board[r][c] == ' ') {
+                    board[r][c] = '*';
+                    walls--;
+                }
+                if (horizontal) {
+                    c++;
+                } else {
+                    r++;
+                }
+            }
+        }
+
+        place(board, random, "^>v<".charAt(random.nextInt(4)), 1);
+        place(board, random, '$', 1);
+        place(board, random, 'k', doors > 0 ? 1 : 0);
+        place(board, random, 'a', trees > 0 ? 1 : 0);
+        place(board, random, '-', doors);
+        place(board, random, 'T', trees);
+        place(board, random, 'd', dynamites);
+        return board;
+    }
+
+    /**
+     * Puts the given number of an item on random empty land tiles.
+     */
+    private void place(char[][] board, Random random, char item, int count) {
+        while (count > 0) {
+            int r = 1 + random.nextInt(height - 2);
+            int c = 1 + random.nextInt(width - 2);
+            if (board[r][c] == ' ') {
+                board[r][c] = item;
+                count--;
+            }
+        }
+    }
+
+    /**
+     * Checks that the gold, the key and the axe can be reached from the start without crossing water or walls.
+     */
+    private boolean isReachable(char[][] board) {
+        boolean[][] visited = new boolean[height][width];
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        int targets = 1 + (doors > 0 ? 1 : 0) + (trees > 0 ? 1 : 0);
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                if ("^>v<".indexOf(board[r][c]) >= 0) {
+                    visited[r][c] = true;
+                    queue.add(new int[]{r, c});
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            int[] tile = queue.poll();
+            char ch = board[tile[0]][tile[1]];
+            if (ch == '$' || ch == 'k' || ch == 'a') {
+                if (--targets == 0) {
+                    return true;
+                }
+            }
+            for (int i = 0; i < 4; i++) {
+                int r = tile[0] + (i == 0 ? -1 : i == 1 ? 1 : 0);
+                int c = tile[1] + (i == 2 ? -1 : i == 3 ? 1 : 0);
+                if (!visited[r][c] && board[r][c] != '~' && board[r][c] != '*') {
+                    visited[r][c] = true;
+                    queue.add(new int[]{r, c});
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a board in the format read by the game engine.
+     */
+    public static String toText(char[][] board) {
+        StringBuilder text = new StringBuilder();
+        for (char[] row : board) {
+            text.append(row).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java network.BoardGenerator [-w <width>] [-h <height>] [-walls <density>] [-water <density>]"
+                + " [-doors <n>] [-trees <n>] [-dynamite <n>] [-seed <n>] [-o <file, .rle to encode it>]");
+        System.exit(-1);
+    }
+
+    /**
+     * Generates a board and prints it, or writes it to a file.
+     *
+     * @param args see printUsage
+     */
+    public static void main(String[] args) {
+        int width = 40, height = 40, doors = 2, trees = 4, dynamites = 3;
+        double wallDensity = 0.15, waterDensity = 0.1;
+        long seed = System.nanoTime();
+        String fileName = null;
+
+        for (int k = 0; k < args.length; k += 2) {
+            if (k + 1 == args.length) {
+                printUsage();
+            }
+            switch (args[k]) {
+                case "-w": width = Integer.parseInt(args[k + 1]); break;
+                case "-h": height = Integer.parseInt(args[k + 1]); break;
+                case "-walls": wallDensity = Double.parseDouble(args[k + 1]); break;
+                case "-water": waterDensity = Double.parseDouble(args[k + 1]); break;
+                case "-doors": doors = Integer.parseInt(args[k + 1]); break;
+                case "-trees": trees = Integer.parseInt(args[k + 1]); break;
+                case "-dynamite": dynamites = Integer.parseInt(args[k + 1]); break;
+                case "-seed": seed = Long.parseLong(args[k + 1]); break;
+                case "-o": fileName = args[k + 1]; break;
+                default: printUsage();
+            }
+        }
+
+        char[][] board;
+        try {
+            board = new BoardGenerator(width, height, wallDensity, waterDensity, doors, trees, dynamites).generate(seed);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+            System.exit(-1);
+            return;
+        }
+        if (fileName == null) {
+            System.out.print(toText(board));
+            return;
+        }
+        try {   // a board file named x.rle is written run-length encoded, see BoardEncoder
+            Files.write(Paths.get(fileName), fileName.endsWith(".rle") ? BoardEncoder.encode(board) : toText(board).getBytes(StandardCharsets.ISO_8859_1));
+        } catch (IOException e) {
+            System.out.println("Could not write " + fileName);
+            System.exit(-1);
+        }
+        System.out.println("Wrote a " + width + "x" + height + " board with seed " + seed + " to " + fileName);
+    }
+}
@@ -8,7 +8,22 @@ package network; /*******************************************
 import agent.Agent;
 
 import java.io.*;
-import java.net.*;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Raft {
 
@@ -17,9 +32,17 @@ public class Raft {
     final static int WEST   = 2;
     final static int SOUTH  = 3;
 
-    private char[][] map;
+    final static int PAD = 2;              // width of the off-map border, the same as the reach of the view
+    final static char OFF_MAP = 0;         // fills the border and the ends of rows shorter than the longest one
+    final static int MAPPED_LOAD_SIZE = 1 << 20;   // map files at least this big are memory-mapped when loaded
+    final static byte[] RLE_MAGIC = { 0, 'R', 'L', 'E', 1 };  // starts a run-length encoded map file, see BoardEncoder
+    final static int MAX_MAP_CELLS = Integer.MAX_VALUE - 8;   // the largest array the VM can allocate
+
+    private char[] map;    // the rows of the environment one after another, surrounded by an OFF_MAP border
     private char[][] view;
 
+    private int width;     // length of one row of map, border included
+    private int[] row_length;  // length of each row as it appears in the map file
     private int nrows;     // number of rows in environment
     private int irow,icol; // initial row and column
 
@@ -38,63 +61,204 @@ public class Raft {
 
     private int num_dynamites_held = 0;
 
+    private int moves = 0;         // moves made in the last game played
+    private String result = null;  // how that game ended
+    private String error = null;   // why that game was cut short, if it was
+
     private static void swanSong( String message ) {
         System.out.println( message );
         System.exit(-1);
     }
 
-    private void read_map( String mapName ) {
+    /**
+     * Returns the index in map of the given row and column.
+     */
+    private int cell( int r, int c ) {
+        return ( r + PAD ) * width + c + PAD;
+    }
 
-        BufferedReader in;
-        boolean agent_here;
-        char ch;
-        int r,c;
+    private void read_map( String mapName ) {
 
-        map = new char[1024][];
+        ByteBuffer bytes = null;
 
-        r=-1;
-        try {
-            in = new BufferedReader(new FileReader(mapName));
-            String oneLine = in.readLine();
-            while(( oneLine != null )&&( oneLine.length() > 0 )) {
-                map[++r] = new char[oneLine.length()];
-                for( c=0; c < oneLine.length(); c++ ) {
-                    map[r][c] = oneLine.charAt(c);
-                    agent_here = true;
-                    switch( map[r][c] ) {
-                        case '^': dirn = NORTH; break;
-                        case '>': dirn = EAST;  break;
-                        case 'v': dirn = SOUTH; break;
-                        case '<': dirn = WEST;  break;
-                        default:  agent_here = false;
-                    }
-                    if( agent_here ) {
-                        row = r;
-                        col = c;
+        try( FileChannel file = FileChannel.open( Paths.get( mapName ))) {
+            if( file.size() >= MAPPED_LOAD_SIZE ) {  // big generated boards are read through the page cache
+                bytes = file.map( FileChannel.MapMode.READ_ONLY, 0, file.size() );
+            }
+            else {
+                bytes = ByteBuffer.allocate( (int) file.size() );
+                while( bytes.hasRemaining() ) {
+                    if( file.read( bytes ) < 0 ) {
+                        break;
                     }
                 }
-                oneLine = in.readLine();
+                bytes.flip();
             }
         }
-        catch( FileNotFoundException fnfe ) {
+        catch( NoSuchFileException nsfe ) {
             swanSong( "File Not Found: "+ mapName );
         }
         catch( IOException ioe ) {
             swanSong( "IO Error" );
         }
 
-        nrows = r+1; // number of rows
+        if( is_rle( bytes )) {
+            try {
+                read_rle_map( bytes );
+            }
+            catch( BufferUnderflowException | IllegalArgumentException e ) {
+                swanSong( "Corrupt map file: "+ mapName );
+            }
+        }
+        else {
+            read_text_map( bytes );
+        }
+
         irow  = row; // initial row
         icol  = col; // initial column
     }
 
+    /**
+     * Returns whether the map file starts with RLE_MAGIC. A text map can not, since it never contains a 0 byte.
+     */
+    private static boolean is_rle( ByteBuffer bytes ) {
+        if( bytes.limit() < RLE_MAGIC.length ) {
+            return false;
+        }
+        for( int i=0; i < RLE_MAGIC.length; i++ ) {
+            if( bytes.get( i ) != RLE_MAGIC[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the agent's position and direction if ch is one of the agent symbols.
+     */
+    private void find_agent( char ch, int r, int c ) {
+        switch( ch ) {
+            case '^': dirn = NORTH; break;
+            case '>': dirn = EAST;  break;
+            case 'v': dirn = SOUTH; break;
+            case '<': dirn = WEST;  break;
+            default:  return;
+        }
+        row = r;
+        col = c;
+    }
+
+    /**
+     * Reads a plain text map: one row per line, up to the first empty line.
+     */
+    private void read_text_map( ByteBuffer bytes ) {
+
+        int[] line_start = new int[64];
+        char ch;
+        int r,c,pos,end,len,max_len;
+
+        // first pass: find where every line starts and how long it is, up to the first empty line
+        row_length = new int[64];
+        max_len = 0;
+        r = 0;
+        pos = 0;
+        while( pos < bytes.limit() ) {
+            end = pos;
+            while(( end < bytes.limit() )&&( bytes.get( end ) != '\n' )) {
+                end++;
+            }
+            len = end - pos;
+            if(( len > 0 )&&( bytes.get( end - 1 ) == '\r' )) {
+                len--;
+            }
+            if( len == 0 ) {
+                break;
+            }
+            if( r == row_length.length ) {
+                row_length = Arrays.copyOf( row_length, 2 * r );
+                line_start = Arrays.copyOf( line_start, 2 * r );
+            }
+            line_start[r] = pos;
+            row_length[r] = len;
+            max_len = Math.max( max_len, len );
+            r++;
+            pos = end + 1;
+        }
+        nrows = r;
+
+        // second pass: copy the lines into the padded grid
+        width = max_len + 2 * PAD;
+        map = new char[( nrows + 2 * PAD ) * width];   // all OFF_MAP to begin with
+        for( r=0; r < nrows; r++ ) {
+            for( c=0; c < row_length[r]; c++ ) {
+                ch = (char) ( bytes.get( line_start[r] + c ) & 0xFF );
+                map[cell( r, c )] = ch;
+                find_agent( ch, r, c );
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cells of the padded grid of a map with the given number of rows and longest row.
+     */
+    static long map_cells( long rows, long max_len ) {
+        return ( rows + 2 * PAD ) * ( max_len + 2 * PAD );
+    }
+
+    /**
+     * Reads a run-length encoded map (see BoardEncoder): after RLE_MAGIC come the number of rows, the length of
+     * every row, and then the rows one after another as runs of a count followed by a symbol. Each run is filled
+     * into the grid in one go, so a board made mostly of long runs of water and walls loads in a few passes over
+     * memory.
+     *
+     * The counts in the header are checked before anything is allocated: every row takes at least three bytes (its
+     * length and one run of a count and a symbol), no row is empty, and the padded grid must fit in one array.
+     */
+    private void read_rle_map( ByteBuffer bytes ) {
+
+        char ch;
+        int r,c,run,max_len;
+
+        bytes.position( RLE_MAGIC.length );
+        nrows = BoardEncoder.readVarint( bytes );
+        if( nrows > bytes.remaining() / 3 ) {
+            throw new IllegalArgumentException( "More rows than the file can hold" );
+        }
+        row_length = new int[nrows];
+        max_len = 0;
+        for( r=0; r < nrows; r++ ) {
+            row_length[r] = BoardEncoder.readVarint( bytes );
+            if( row_length[r] == 0 ) {
+                throw new IllegalArgumentException( "Empty row" );
+            }
+            max_len = Math.max( max_len, row_length[r] );
+        }
+        if(( nrows > bytes.remaining() / 2 )||( map_cells( nrows, max_len ) > MAX_MAP_CELLS )) {
+            throw new IllegalArgumentException( "Rows do not fit in the file or in memory" );
+        }
+
+        width = max_len + 2 * PAD;
+        map = new char[( nrows + 2 * PAD ) * width];   // all OFF_MAP to begin with
+        for( r=0; r < nrows; r++ ) {
+            for( c=0; c < row_length[r]; c += run ) {
+                run = BoardEncoder.readVarint( bytes );
+                ch = (char) ( bytes.get() & 0xFF );
+                if(( run == 0 )||( run > row_length[r] - c )) {
+                    throw new IllegalArgumentException( "Run does not fit in its row" );
+                }
+                Arrays.fill( map, cell( r, c ), cell( r, c ) + run, ch );
+                find_agent( ch, r, c );
+            }
+        }
+    }
+
     private void print_map() {
         char ch=' ';
         int r,c;
 
         System.out.println();
         for( r=0; r < nrows; r++ ) {
-            for( c=0; c < map[r].length; c++ ) {
+            for( c=0; c < row_length[r]; c++ ) {
                 if(( r == row )&&( c == col )) { // agent is here
                     switch( dirn ) {
                         case NORTH: ch = '^'; break;
@@ -104,7 +268,7 @@ public class Raft {
                     }
                 }
                 else {
-                    ch = map[r][c];
+                    ch = map[cell( r, c )];
                 }
                 System.out.print( ch );
             }
@@ -137,12 +301,12 @@ public class Raft {
             }
             new_row = row + d_row;
             new_col = col + d_col;
+            ch = map[cell( new_row, new_col )];
 
-            if(  (new_row < 0)||(new_row >= nrows)
-                    ||(new_col < 0)||(new_col >= map[new_row].length)) {
+            if( ch == OFF_MAP ) {
                 if(( action == 'F' )||( action == 'f' )) {
                     if( !off_map ) {
-                        map[row][col] = '~';
+                        map[cell( row, col )] = '~';
                         off_map = true;
                     }
                     row = new_row;
@@ -155,24 +319,22 @@ public class Raft {
                 }
             }
 
-            ch = map[new_row][new_col];
-
             switch( action ) {
                 case 'F': case 'f':
                     switch( ch ) { // can't move into an obstacle
                         case '*': case 'T': case '-':
                             return( false );
                     }
-                    if( !off_map ) map[row][col] = ' ';
+                    if( !off_map ) map[cell( row, col )] = ' ';
 
                     switch( ch ) {
                         case '~':
                             if( on_raft ) {
-                                if( !off_map ) map[row][col] = '~';
+                                if( !off_map ) map[cell( row, col )] = '~';
                             }
                             else if( have_raft ) {
                                 on_raft = true;
-                                if( !off_map ) map[row][col] = ' ';
+                                if( !off_map ) map[cell( row, col )] = ' ';
                             }
                             else {
                                 game_lost = true;
@@ -180,7 +342,7 @@ public class Raft {
                             break;
                         case ' ': case 'a': case 'k': case '$': case 'd':
                             if( on_raft && !off_map ) {
-                                map[row][col] = '~';
+                                map[cell( row, col )] = '~';
                                 on_raft = false;
                                 have_raft = false;
                             }
@@ -198,13 +360,13 @@ public class Raft {
                     if( have_treasure &&( row == irow )&&( col == icol )) {
                         game_won = true;
                     }
-                    if( !off_map ) map[row][col] = ' ';
+                    if( !off_map ) map[cell( row, col )] = ' ';
                     off_map = false;
                     return( true );
 
                 case 'C': case 'c': // chop
                     if(( ch == 'T' )&& have_axe ) {
-                        map[new_row][new_col] = ' ';
+                        map[cell( new_row, new_col )] = ' ';
                         have_raft = true;
                         return( true );
                     }
@@ -212,7 +374,7 @@ public class Raft {
 
                 case 'U': case 'u': // unlock
                     if(( ch == '-' )&& have_key ) {
-                        map[new_row][new_col] = ' ';
+                        map[cell( new_row, new_col )] = ' ';
                         return( true );
                     }
                     break;
@@ -221,7 +383,7 @@ public class Raft {
                     if( num_dynamites_held > 0 ) {
                         switch( ch ) {
                             case '*': case 'T': case '-':
-                                map[new_row][new_col] = ' ';
+                                map[cell( new_row, new_col )] = ' ';
                                 num_dynamites_held--;
                                 return( true );
                         }
@@ -232,44 +394,267 @@ public class Raft {
         return( false );
     }
 
+    // how a step along a row (i) and a column (j) of the view moves through the map, for each direction
+    private static final int[] VIEW_ROW_I = {  0, 1,  0, -1 };
+    private static final int[] VIEW_ROW_J = {  1, 0, -1,  0 };
+    private static final int[] VIEW_COL_I = { -1, 0,  1,  0 };
+    private static final int[] VIEW_COL_J = {  0, 1,  0, -1 };
+
     private void get_view() {
         char ch;
-        int i,j,r=0,c=0;
+        int i,j;
+        int centre = cell( row, col );
 
         for( i = -2; i <= 2; i++ ) {
             for( j = -2; j <= 2; j++ ) {
-                switch( dirn ) {
-                    case NORTH: r = row+i; c = col+j; break;
-                    case SOUTH: r = row-i; c = col-j; break;
-                    case EAST:  r = row+j; c = col-i; break;
-                    case WEST:  r = row-j; c = col+i; break;
-                }
-                if(  ( r >= 0 )&&( r < nrows )
-                        &&( c >= 0 )&&( c < map[r].length )) {
-                    view[2+i][2+j] = map[r][c];
+                ch = map[centre + ( VIEW_ROW_I[dirn]*i + VIEW_ROW_J[dirn]*j )*width
+                                + VIEW_COL_I[dirn]*i + VIEW_COL_J[dirn]*j];
+                view[2+i][2+j] = ( ch == OFF_MAP ) ? '.' : ch;
+            }
+        }
+    }
+
+    /**
+     * Creates a game in the starting position of this one, with its own copy of the map,
+     * so several agents can play the same board at the same time.
+     */
+    private Raft new_game() {
+        Raft game = new Raft();
+        game.map   = map.clone();
+        game.view  = new char[5][5];
+        game.width = width;
+        game.row_length = row_length;
+        game.nrows = nrows;
+        game.irow  = irow;
+        game.icol  = icol;
+        game.row   = row;
+        game.col   = col;
+        game.dirn  = dirn;
+        return game;
+    }
+
+    /**
+     * Plays one game against an agent connected over the network.
+     *
+     * @return the message describing how the game ended
+     */
+    private String play( ViewChannel channel, int maxmoves, boolean silent ) throws IOException
+    {
+        char action;
+
+        for( moves=1; moves <= maxmoves; moves++ ) {
+            get_view();
+            channel.writeView( view );
+            int read = channel.readAction();
+            if( read < 0 ) {
+                throw new EOFException( "the agent closed the connection" );
+            }
+            action = (char) read;
+            if( !silent ) {
+                System.out.println("action = "+ action );
+            }
+            apply( action );
+            if( !silent ) {
+                print_map();
+            }
+            if( game_won ) {
+                return( "Game Won in "+ moves +" moves." );
+            }
+            else if( game_lost ) {
+                return( "Game Lost." );
+            }
+        }
+        return( "Exceeded maximum of "+ maxmoves +" moves.\n" );
+    }
+
+    /**
+     * Plays one game against an agent running in this process.
+     *
+     * @param replayLog if not null, every view and action is recorded in it
+     * @return the message describing how the game ended
+     * @throws IOException if writing the replay log fails
+     */
+    String play( Agent agent, ReplayLog replayLog, int maxmoves, boolean silent ) throws IOException
+    {
+        char action;
+
+        for( moves=1; moves <= maxmoves; moves++ ) {
+            get_view();
+            action = agent.get_action( view );
+            if( replayLog != null ) {
+                replayLog.record( view, action );
+            }
+            apply( action );
+            if( !silent ) {
+                print_map();
+            }
+            if( game_won ) {
+                return( "Game Won in "+ moves +" moves." );
+            }
+            else if( game_lost ) {
+                return( "Game Lost." );
+            }
+        }
+        return( "Exceeded maximum of "+ maxmoves +" moves." );
+    }
+
+    /**
+     * Loads a board for a game played in this process, see play.
+     */
+    static Raft load( String mapName )
+    {
+        Raft game = new Raft();
+        game.view = new char[5][5];
+        game.read_map( mapName );
+        return game;
+    }
+
+    boolean is_won() {
+        return game_won;
+    }
+
+    /**
+     * Returns the number of moves made in the last game played, or one more than the maximum if the game was not
+     * finished in time.
+     */
+    int moves_made() {
+        return moves;
+    }
+
+    /**
+     * Server mode: keeps accepting agents until the given number of games have started,
+     * plays every game on its own thread with its own copy of the board, and prints a
+     * summary of every game once all of them have ended. A game that has not ended
+     * within the time limit is cut short by closing its connection, so one agent that
+     * stops answering can't keep the summary from being printed.
+     */
+    private void serve( String mapName, int port, int games, int maxmoves, int time_limit )
+    {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        ArrayList<Raft> started = new ArrayList<>();
+
+        try( ServerSocketChannel server = ServerSocketChannel.open() ) {
+            try {
+                server.bind( new InetSocketAddress( port ), games );
+            }
+            catch( IOException e ) {
+                swanSong( "Could not listen on port: "+ port );
+            }
+            for( int g=1; g <= games; g++ ) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
                 }
-                else {
-                    view[2+i][2+j] = '.';
+                catch( IOException e ) {
+                    System.out.println( "Could not accept game "+ g +": "+ e.getMessage() +". No more games are started." );
+                    break;
                 }
+                Raft game = new_game();
+                int number = g;
+                started.add( game );
+                pool.execute(() -> {
+                    AtomicBoolean timed_out = new AtomicBoolean();
+                    ScheduledFuture<?> deadline = null;
+                    try( ViewChannel channel = new ViewChannel( client )) {
+                        deadline = timer.schedule(() -> {
+                            timed_out.set( true );
+                            try {
+                                channel.close();
+                            }
+                            catch( IOException e ) {}
+                        }, time_limit, TimeUnit.SECONDS );
+                        game.result = game.play( channel, maxmoves, true );
+                    }
+                    catch( IOException e ) {
+                        game.error = timed_out.get() ? "not finished within "+ time_limit +" seconds"
+                                                     : "lost connection: "+ e.getMessage();
+                    }
+                    catch( RuntimeException e ) {
+                        game.error = e.toString();
+                    }
+                    finally {
+                        if( deadline != null ) {
+                            deadline.cancel( false );
+                        }
+                    }
+                    System.out.println( "Game "+ number +": "+ game.describe_result() );
+                });
             }
         }
+        catch( IOException e ) {
+            System.out.println( "Could not close port: "+ port );
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination( Long.MAX_VALUE, TimeUnit.DAYS );
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        timer.shutdownNow();
+
+        int won = 0, lost = 0, failed = 0, won_moves = 0;
+        System.out.println( "game  board                moves  result" );
+        for( int g=0; g < started.size(); g++ ) {
+            Raft game = started.get( g );
+            if( game.game_won ) {
+                won++;
+                won_moves += game.moves;
+            }
+            else if( game.game_lost ) {
+                lost++;
+            }
+            if( game.error != null ) {
+                failed++;
+            }
+            System.out.println( String.format( "%-5d %-20s %5d  %s", g + 1, Paths.get( mapName ).getFileName(), game.moves_played(), game.describe_result() ));
+        }
+        System.out.println( "Played "+ started.size() +" games: "+ won +" won, "+ lost +" lost, "
+                + ( started.size() - won - lost ) +" unfinished, "+ failed +" of them cut short by an error." );
+        if( won > 0 ) {
+            System.out.println( "Average moves per won game: "+ ( won_moves / won ));
+        }
+    }
+
+    /**
+     * Returns the number of moves the agent made in the last game, counting the move that
+     * ended it but not one the game was cut short in.
+     */
+    private int moves_played() {
+        return game_won || game_lost ? moves : moves - 1;
+    }
+
+    /**
+     * Describes how the last game played over the network ended: won, lost or unfinished,
+     * followed by the error that cut it short, if one did.
+     */
+    private String describe_result() {
+        String outcome = game_won ? "won" : game_lost ? "lost" : "unfinished";
+        if( error != null ) {
+            return outcome +" after "+ moves_played() +" moves, "+ error;
+        }
+        return result.trim();
     }
 
     private static void printUsage()
     {
         swanSong(
-                "Usage: java network.Raft [-p <port>] -i map [-m <maxmoves>] [-s]\n");
+                "Usage: java network.Raft [-p <port> [-g <games> [-d <seconds>]]] -i map [-m <maxmoves>] [-r <replay log>] [-t] [-s]\n");
     }
 
     public static void main( String[] args )
     {
         Raft raft;
         boolean silent = false;
+        boolean profile = false;
         String mapName = "";
-        char action  = 'F';
         int maxmoves = 10000;
         int port = 0;
-        int k,m;
+        int games = 0;
+        int time_limit = 600;
+        String logName = null;
+        int k;
 
         raft = new Raft();
         raft.view = new char[5][5];
@@ -300,6 +685,34 @@ public class Raft {
                     printUsage();
                 }
             }
+            else if( args[k].compareTo("-g") == 0 ) {
+                if( ++k < args.length ) {
+                    games = Integer.parseInt(args[k++]);
+                }
+                else {
+                    printUsage();
+                }
+            }
+            else if( args[k].compareTo("-d") == 0 ) {
+                if( ++k < args.length ) {
+                    time_limit = Integer.parseInt(args[k++]);
+                }
+                else {
+                    printUsage();
+                }
+            }
+            else if( args[k].compareTo("-r") == 0 ) {
+                if( ++k < args.length ) {
+                    logName = args[k++];
+                }
+                else {
+                    printUsage();
+                }
+            }
+            else if( args[k].compareTo("-t") == 0 ) {
+                profile = true;
+                k++;
+            }
             else if( args[k].compareTo("-s") == 0 ) {
                 silent = true;
                 k++;
@@ -314,84 +727,60 @@ public class Raft {
         }
         raft.read_map( mapName );
 
-        if( !silent ) {
+        if( !silent && games == 0 ) {
             raft.print_map();
         }
 
-        if( port != 0 ) {
-            InputStream in            = null;
-            OutputStream out          = null;
-            ServerSocket serverSocket = null;
-            Socket clientSocket       = null;
-            int i,j;
+        if( port != 0 && games > 0 ) {
+            raft.serve( mapName, port, games, maxmoves, time_limit );
+        }
+        else if( port != 0 ) {
+            ViewChannel channel = null;
 
             try {
-                serverSocket = new ServerSocket( port );
-                clientSocket = serverSocket.accept();
-                serverSocket.close();
-                in  = clientSocket.getInputStream();
-                out = clientSocket.getOutputStream();
+                channel = ViewChannel.acceptOne( port );
             }
             catch( IOException e ) {
                 swanSong( "Could not listen on port: "+ port );
             }
 
             try {
-                for( m=1; m <= maxmoves; m++ ) {
-                    raft.get_view();
-                    for( i=0; i < 5; i++ ) {
-                        for( j=0; j < 5; j++ ) {
-                            if( !(( i == 2 )&&( j == 2 ))) {
-                                out.write( raft.view[i][j] );
-                            }
-                        }
-                    }
-                    out.flush();
-                    action = (char) in.read();
-                    if( !silent ) {
-                        System.out.println("action = "+ action );
-                    }
-                    raft.apply( action );
-                    if( !silent ) {
-                        raft.print_map();
-                    }
-                    if( raft.game_won ) {
-                        swanSong( "Game Won in "+ m +" moves." );
-                    }
-                    else if( raft.game_lost ) {
-                        swanSong( "Game Lost." );
-                    }
-                }
-                swanSong("Exceeded maximum of "+ maxmoves +" moves.\n");
+                swanSong( raft.play( channel, maxmoves, silent ));
             }
             catch( IOException e ) {
                 swanSong("Lost connection to port: "+ port );
             }
             finally {
                 try {
-                    clientSocket.close();
+                    channel.close();
                 }
                 catch( IOException e ) {}
             }
         }
         else {
             Agent agent = new Agent();
+            ReplayLog replayLog = null;
+            String result = null;
 
-            for( m=1; m <= maxmoves; m++ ) {
-                raft.get_view();
-                action = agent.get_action( raft.view );
-                raft.apply( action );
-                if( !silent ) {
-                    raft.print_map();
-                }
-                if( raft.game_won ) {
-                    swanSong( "Game Won in "+ m +" moves." );
+            if( logName != null ) {
+                try {
+                    replayLog = new ReplayLog( logName );
                 }
-                else if( raft.game_lost ) {
-                    swanSong( "Game Lost." );
+                catch( IOException e ) {
+                    swanSong( "Could not open replay log: "+ logName );
                 }
             }
-            swanSong("Exceeded maximum of "+ maxmoves +" moves.");
+
+            try {
+                result = raft.play( agent, replayLog, maxmoves, silent );
+            }
+            catch( IOException e ) {
+                swanSong( "Could not write replay log: "+ logName );
+            }
+            if( profile ) {
+                System.out.print( agent.getProfileReport() );
+            }
+            swanSong( result );
         }
     }
 }
@@ -0,0 +1,260 @@
+package network;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays every board in a directory in this process and compares the outcome with golden values recorded earlier, so
+ * that a change to the agent or the searches that makes it lose a game, need more moves or plan more slowly is caught
+ * before it is committed. Every board is played a few times by a new agent each time, and the fastest game counts,
+ * which keeps the noise of a busy machine out of the planning time. Planning time is the time spent in get_action.
+ *
+ * A board fails when its result differs from the golden result, when it needs more moves than the golden number plus
+ * the move tolerance, or when planning takes longer than the recorded time plus the time tolerance and a small fixed
+ * slack (short games are too fast to time precisely). Allocation is reported but not checked.
+ *
+ * The results and move counts are the same on every machine, so they are kept in a golden file that is committed with
+ * the boards. The planning times and allocation depend on the machine, so they are kept in a separate times file that
+ * every machine records for itself with -record-times, and that is not committed. Without a times file the time check
+ * is skipped with a warning; -record-times checks the results and moves while it records. Both are plain text files
+ * with one line per board, and -record writes both.
+ *
+ * Exits with status 0 if every board passed and -1 otherwise, so it can be used in scripts.
+ */
+public class RegressionSuite {
+
+    /**
+     * The outcome of one board.
+     */
+    private static class Outcome {
+        String result;
+        int moves;
+        long planningMillis;
+        long allocatedMegabytes;
+
+        /**
+         * Formats the result and moves as a line of the golden file.
+         */
+        String formatGolden(String board) {
+            return String.format("%-12s %-10s %6d", board, result, moves);
+        }
+
+        /**
+         * Formats the planning time and allocation as a line of the times file.
+         */
+        String formatTimes(String board) {
+            return String.format("%-12s %8d %8d", board, planningMillis, allocatedMegabytes);
+        }
+    }
+
+    /**
+     * Plays a board runs times and returns the outcome of the last game, with the shortest planning time of all games.
+     */
+    private static Outcome play(Path board, int runs, int maxmoves) throws IOException {
+        Outcome outcome = new Outcome();
+        outcome.planningMillis = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            Raft game = Raft.load(board.toString());
+            ScalingBenchmark.TimedAgent agent = new ScalingBenchmark.TimedAgent(maxmoves);
+            long allocatedBefore = ScalingBenchmark.allocatedBytes();
+            String result = game.play(agent, null, maxmoves, true);
+            outcome.allocatedMegabytes = allocatedBefore < 0 ? -1 : (ScalingBenchmark.allocatedBytes() - allocatedBefore) >> 20;
+            outcome.result = game.is_won() ? "won" : result.startsWith("Game Lost") ? "lost" : "unfinished";
+            outcome.moves = agent.moves;
+            long nanos = 0;
+            for (int m = 0; m < agent.moves; m++) {
+                nanos += agent.nanos[m];
+            }
+            outcome.planningMillis = Math.min(outcome.planningMillis, nanos / 1000000);
+        }
+        return outcome;
+    }
+
+    /**
+     * Returns the board files in the given directory, sorted by name.
+     */
+    private static List<Path> boards(Path directory) throws IOException {
+        List<Path> boards = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{in,rle}")) {
+            for (Path file : files) {
+                boards.add(file);
+            }
+        }
+        Collections.sort(boards);
+        return boards;
+    }
+
+    /**
+     * Reads the lines of a golden or times file, split into fields, by board. Empty lines and comments starting with
+     * '#' are skipped.
+     *
+     * @param fields the number of fields on every line, including the board
+     */
+    private static Map<String, String[]> readLines(Path file, int fields) throws IOException {
+        Map<String, String[]> lines = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] split = line.split("\\s+");
+            if (split.length != fields) {
+                throw new IOException("Bad line in " + file + ": " + line);
+            }
+            lines.put(split[0], split);
+        }
+        return lines;
+    }
+
+    /**
+     * Reads the golden file and, if there is one, the times file.
+     */
+    private static Map<String, Outcome> readExpected(Path golden, Path times) throws IOException {
+        Map<String, Outcome> outcomes = new LinkedHashMap<>();
+        for (String[] fields : readLines(golden, 3).values()) {
+            Outcome outcome = new Outcome();
+            outcome.result = fields[1];
+            outcome.moves = Integer.parseInt(fields[2]);
+            outcome.planningMillis = -1;    // not recorded on this machine
+            outcomes.put(fields[0], outcome);
+        }
+        if (Files.exists(times)) {
+            for (String[] fields : readLines(times, 3).values()) {
+                Outcome outcome = outcomes.get(fields[0]);
+                if (outcome != null) {
+                    outcome.planningMillis = Long.parseLong(fields[1]);
+                    outcome.allocatedMegabytes = Long.parseLong(fields[2]);
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java network.RegressionSuite [-boards <directory>] [-golden <file>] [-times <file>] [-record] [-record-times]"
+                + " [-n <runs per board>] [-moves <tolerance %>] [-time <tolerance %>] [-slack <ms>] [-m <maxmoves>]");
+        System.exit(-1);
+    }
+
+    /**
+     * Runs the suite.
+     *
+     * @param args see printUsage
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get("src", "boards");
+        Path golden = null;
+        Path times = null;
+        boolean record = false;
+        boolean recordTimes = false;
+        int runs = 3;
+        int maxmoves = 10000;
+        double moveTolerance = 0, timeTolerance = 50;
+        long slackMillis = 50;
+
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("-record") || args[k].equals("-record-times")) {
+                record |= args[k].equals("-record");
+                recordTimes = true;
+                continue;
+            }
+            if (k + 1 == args.length) {
+                printUsage();
+            }
+            switch (args[k++]) {
+                case "-boards": directory = Paths.get(args[k]); break;
+                case "-golden": golden = Paths.get(args[k]); break;
+                case "-times": times = Paths.get(args[k]); break;
+                case "-n": runs = Math.max(1, Integer.parseInt(args[k])); break;
+                case "-moves": moveTolerance = Double.parseDouble(args[k]); break;
+                case "-time": timeTolerance = Double.parseDouble(args[k]); break;
+                case "-slack": slackMillis = Long.parseLong(args[k]); break;
+                case "-m": maxmoves = Integer.parseInt(args[k]); break;
+                default: printUsage();
+            }
+        }
+        if (golden == null) {
+            golden = directory.resolve("golden.txt");
+        }
+        if (times == null) {
+            times = directory.resolve("times.txt");
+        }
+
+        if (!record && !Files.exists(golden)) {
+            System.out.println("No golden values in " + golden + ", record them with -record");
+            System.exit(-1);
+        }
+        Map<String, Outcome> expected = record ? new LinkedHashMap<>() : readExpected(golden, times);
+        if (!recordTimes && !Files.exists(times)) {
+            System.out.println("Warning: no planning times for this machine in " + times + ", the time check is skipped."
+                    + " Record them with -record-times.");
+        }
+        StringBuilder recordedGolden = new StringBuilder();
+        recordedGolden.append(String.format("# %-10s %-10s %6s%n", "board", "result", "moves"));
+        StringBuilder recordedTimes = new StringBuilder();
+        recordedTimes.append(String.format("# %-10s %8s %8s%n", "board", "time ms", "alloc MB"));
+        int failures = 0;
+
+        System.out.printf("%-12s %-10s %13s %17s %8s  %s%n", "board", "result", "moves", "time ms", "alloc MB", "verdict");
+        for (Path board : boards(directory)) {
+            String name = board.getFileName().toString();
+            Outcome baseline = expected.get(name);
+            if (!record && baseline == null) {
+                System.out.printf("%-12s no golden values, skipped%n", name);
+                continue;
+            }
+            Outcome outcome = play(board, runs, maxmoves);
+            recordedGolden.append(outcome.formatGolden(name)).append(System.lineSeparator());
+            recordedTimes.append(outcome.formatTimes(name)).append(System.lineSeparator());
+            if (record) {
+                System.out.printf("%-12s %-10s %13d %17d %8d  recorded%n", name, outcome.result, outcome.moves, outcome.planningMillis, outcome.allocatedMegabytes);
+                continue;
+            }
+            boolean timed = !recordTimes && baseline.planningMillis >= 0;
+
+            List<String> problems = new ArrayList<>();
+            if (!outcome.result.equals(baseline.result)) {
+                problems.add("result was " + baseline.result);
+            }
+            if (outcome.moves > baseline.moves * (1 + moveTolerance / 100)) {
+                problems.add("moves over " + baseline.moves);
+            }
+            if (timed && outcome.planningMillis > baseline.planningMillis * (1 + timeTolerance / 100) + slackMillis) {
+                problems.add("time over " + baseline.planningMillis + " ms");
+            }
+            if (!problems.isEmpty()) {
+                failures++;
+            }
+            System.out.printf("%-12s %-10s %6d (%+5d) %8d %8s %8d  %s%n", name, outcome.result,
+                    outcome.moves, outcome.moves - baseline.moves, outcome.planningMillis,
+                    timed ? String.format("(%+6d)", outcome.planningMillis - baseline.planningMillis) : "",
+                    outcome.allocatedMegabytes, problems.isEmpty() ? "ok" : "FAIL: " + String.join(", ", problems));
+        }
+
+        if (record) {
+            Files.write(golden, recordedGolden.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote " + golden);
+        }
+        if (recordTimes) {
+            Files.write(times, recordedTimes.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote " + times);
+        }
+        if (record) {
+            return;
+        }
+        if (failures > 0) {
+            System.out.println(failures + " board(s) regressed");
+            System.exit(-1);
+        }
+        System.out.println("All boards passed");
+    }
+}
@@ -0,0 +1,188 @@
+package network;
+
+import agent.Agent;
+import pathfinding.Explore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Binary log of one game as the agent saw it. The log starts with LOG_MAGIC and a line naming the search settings the
+ * game was played with (see Explore.getSettings). Every move after that is one 25 byte record: the 24 tiles of the
+ * view in the same order as a view frame of ViewChannel, followed by the action the agent chose. With one search
+ * thread the agent is deterministic, so feeding the recorded views back into a new agent with the same settings
+ * reproduces the game exactly, which makes it possible to profile a slow game without the engine or the board. With
+ * more threads HDA* may find other paths from run to run, and the replayed agent may choose other actions than the
+ * recorded ones.
+ *
+ * Run with a log file as the only argument to replay it and print how long each call to get_action took, followed by the agent's
+ * own report of which stages and steps the time went to.
+ */
+public class ReplayLog implements Closeable {
+
+    /**
+     * The number of bytes in one record.
+     */
+    public static final int RECORD_SIZE = ViewChannel.VIEW_FRAME_SIZE + 1;
+
+    /**
+     * Starts every log. No view starts with it, since 'L' is not a tile.
+     */
+    private static final byte[] LOG_MAGIC = { 0, 'L', 'O', 'G' };
+
+    private final FileChannel file;
+    private final ByteBuffer record = ByteBuffer.allocateDirect(RECORD_SIZE);
+
+    /**
+     * Opens a new log, creating the file or emptying it if it exists. A log holds a single game, since replaying one
+     * game's views after another's would feed them to the agent that played the first game.
+     *
+     * @param fileName the name of the log file
+     * @throws IOException if the file cannot be opened
+     */
+    public ReplayLog(String fileName) throws IOException {
+        file = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(LOG_MAGIC.length + 256);
+        header.put(LOG_MAGIC).put((Explore.getSettings() + "\n").getBytes(StandardCharsets.ISO_8859_1));
+        header.flip();
+        while (header.hasRemaining()) {
+            file.write(header);
+        }
+    }
+
+    /**
+     * Returns the index of the first record in a log, just after the header.
+     *
+     * @param log the contents of a log file
+     * @return the index of the first record, 0 for a log written before logs had a header
+     */
+    public static int firstRecord(byte[] log) {
+        if (log.length < LOG_MAGIC.length || !Arrays.equals(Arrays.copyOf(log, LOG_MAGIC.length), LOG_MAGIC)) {
+            return 0;
+        }
+        int end = LOG_MAGIC.length;
+        while (end < log.length && log[end] != '\n') {
+            end++;
+        }
+        return Math.min(end + 1, log.length);
+    }
+
+    /**
+     * Returns the search settings a log was recorded with.
+     *
+     * @param log the contents of a log file
+     * @return the settings, null for a log written before logs had a header
+     */
+    public static String settings(byte[] log) {
+        int first = firstRecord(log);
+        if (first == 0) {
+            return null;
+        }
+        return new String(log, LOG_MAGIC.length, first - 1 - LOG_MAGIC.length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Appends one move to the log. Each record is written with a single call, so a game that ends with System.exit
+     * loses nothing.
+     *
+     * @param view the view the agent was given
+     * @param action the action the agent chose
+     * @throws IOException if writing fails
+     */
+    public void record(char[][] view, char action) throws IOException {
+        record.clear();
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5; j++) {
+                if (!(i == 2 && j == 2)) {
+                    record.put((byte) view[i][j]);
+                }
+            }
+        }
+        record.put((byte) action);
+        record.flip();
+        while (record.hasRemaining()) {
+            file.write(record);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Replays a log through a new agent, timing every call to get_action and checking that the agent still makes the
+     * recorded choices.
+     *
+     * @param args the name of the log file
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: java network.ReplayLog <log>");
+            System.exit(-1);
+        }
+        byte[] log;
+        try {
+            log = Files.readAllBytes(Paths.get(args[0]));
+        } catch (IOException e) {
+            System.out.println("Could not read " + args[0]);
+            System.exit(-1);
+            return;
+        }
+        int first = firstRecord(log);
+        int moves = (log.length - first) / RECORD_SIZE;
+        String recorded = settings(log);
+        if (recorded == null) {
+            System.out.println("The log does not say which search settings it was recorded with.");
+        } else if (!recorded.equals(Explore.getSettings())) {
+            System.out.println("Recorded with " + recorded + ", replayed with " + Explore.getSettings() + ". The actions may differ.");
+        } else if (!recorded.startsWith("pathfinding.threads=1 ")) {
+            System.out.println("Recorded with " + recorded + ". The parallel search is not deterministic, so the actions may differ.");
+        }
+        Agent agent = new Agent();
+        char[][] view = new char[5][5];
+        long[] nanos = new long[moves];
+        int mismatches = 0;
+        for (int m = 0; m < moves; m++) {
+            int k = first + m * RECORD_SIZE;
+            for (int i = 0; i < 5; i++) {
+                for (int j = 0; j < 5; j++) {
+                    if (!(i == 2 && j == 2)) {
+                        view[i][j] = (char) (log[k++] & 0xFF);
+                    }
+                }
+            }
+            long start = System.nanoTime();
+            char action = agent.get_action(view);
+            nanos[m] = System.nanoTime() - start;
+            if (action != (char) (log[k] & 0xFF) && mismatches++ == 0) {
+                System.out.println("Move " + (m + 1) + ": recorded " + (char) (log[k] & 0xFF) + ", replayed " + action + ". Later views may not match the replayed game.");
+            }
+        }
+        if (moves == 0) {
+            System.out.println("The log is empty.");
+            return;
+        }
+
+        long total = 0;
+        int slowest = 0;
+        for (int m = 0; m < moves; m++) {
+            total += nanos[m];
+            if (nanos[m] > nanos[slowest]) {
+                slowest = m;
+            }
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.println("Replayed " + moves + " moves in " + total / 1000000 + " ms, " + mismatches + " different actions.");
+        System.out.println("Median " + sorted[moves / 2] / 1000 + " us, 99th percentile " + sorted[Math.min(moves - 1, moves * 99 / 100)] / 1000 + " us, slowest " + nanos[slowest] / 1000 + " us (move " + (slowest + 1) + ").");
+        System.out.print(agent.getProfileReport());
+    }
+}
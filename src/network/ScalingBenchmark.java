@@ -0,0 +1,201 @@
+package network;
+
+import agent.Agent;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Plays generated boards of growing size in this process and shows how the number of moves, the time per move and the
+ * memory used by the agent grow with the size of the board. For every size a number of boards is generated with
+ * BoardGenerator, using the same densities and a number of doors, trees and dynamite that grows with the area, and
+ * every board is played by a new agent.
+ *
+ * Every board is printed with the BoardGenerator arguments that recreate it, so a board where the agent is slow or
+ * loses can be generated again and played with Raft. The memory kept by the agent is the heap in use once the game is
+ * over and the agent is still reachable, less the heap in use once it is not.
+ */
+public class ScalingBenchmark {
+
+    /**
+     * The number of tiles per door, tree and dynamite on the generated boards.
+     */
+    private static final int TILES_PER_ITEM = 400;
+
+    /**
+     * An agent that times every call to get_action.
+     */
+    static class TimedAgent extends Agent {
+        final long[] nanos;
+        int moves;
+
+        TimedAgent(int maxmoves) {
+            this(new long[maxmoves]);
+        }
+
+        /**
+         * Creates an agent that stores the time of every move in the given array, which may outlive it.
+         */
+        TimedAgent(long[] nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        public char get_action(char[][] view) {
+            long start = System.nanoTime();
+            char action = super.get_action(view);
+            nanos[moves++] = System.nanoTime() - start;
+            return action;
+        }
+    }
+
+    /**
+     * The measurements of one game.
+     */
+    private static class Result {
+        boolean won;
+        int moves;
+        long nanos;
+        long slowestNanos;
+        long allocatedBytes;
+        long retainedBytes;
+    }
+
+    /**
+     * Returns the heap in use after garbage collection. One System.gc may leave garbage behind, so it is repeated until
+     * the heap stops shrinking.
+     */
+    private static long usedMemory() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            memory.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    /**
+     * Returns the number of bytes the current thread has allocated, or -1 if the JVM can't tell.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static Result play(char[][] board, Path file, int maxmoves) throws IOException {
+        Files.write(file, BoardEncoder.encode(board));
+        Raft game = Raft.load(file.toString());
+        Result result = new Result();
+
+        long[] nanos = new long[maxmoves];     // outside the agent, so that it is not counted as memory the agent keeps
+        long allocatedBefore = allocatedBytes();
+        TimedAgent agent = new TimedAgent(nanos);
+        game.play(agent, null, maxmoves, true);
+        result.allocatedBytes = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+        result.won = game.is_won();
+        result.moves = agent.moves;
+
+        long usedWithAgent = usedMemory();
+        Reference.reachabilityFence(agent);
+        agent = null;
+        result.retainedBytes = Math.max(0, usedWithAgent - usedMemory());
+
+        for (int m = 0; m < result.moves; m++) {
+            result.nanos += nanos[m];
+            result.slowestNanos = Math.max(result.slowestNanos, nanos[m]);
+        }
+        return result;
+    }
+
+    /**
+     * Prints one bar per size, scaled so the largest value fills the width.
+     */
+    private static void plot(String title, String unit, int[] sizes, double[] values) {
+        double max = Arrays.stream(values).max().orElse(0);
+        System.out.println();
+        System.out.println(title + " (" + unit + ")");
+        for (int i = 0; i < sizes.length; i++) {
+            int length = max == 0 ? 0 : (int) Math.round(50 * values[i] / max);
+            System.out.printf("%3dx%-3d |%-50s %.1f%n", sizes[i], sizes[i], "#".repeat(length), values[i]);
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java network.ScalingBenchmark [-sizes <n,n,...>] [-n <boards per size>] [-seed <n>]"
+                + " [-walls <density>] [-water <density>] [-m <maxmoves>]");
+        System.exit(-1);
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args see printUsage
+     */
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {20, 30, 40, 50, 60, 70, 80};
+        int boards = 3;
+        int maxmoves = 10000;
+        long seed = 1;
+        double wallDensity = 0.15, waterDensity = 0.1;
+
+        for (int k = 0; k < args.length; k += 2) {
+            if (k + 1 == args.length) {
+                printUsage();
+            }
+            switch (args[k]) {
+                case "-sizes": sizes = Arrays.stream(args[k + 1].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "-n": boards = Integer.parseInt(args[k + 1]); break;
+                case "-seed": seed = Long.parseLong(args[k + 1]); break;
+                case "-walls": wallDensity = Double.parseDouble(args[k + 1]); break;
+                case "-water": waterDensity = Double.parseDouble(args[k + 1]); break;
+                case "-m": maxmoves = Integer.parseInt(args[k + 1]); break;
+                default: printUsage();
+            }
+        }
+
+        double[] meanMoves = new double[sizes.length];
+        double[] meanMicrosPerMove = new double[sizes.length];
+        double[] meanRetainedKilobytes = new double[sizes.length];
+        Path file = Files.createTempFile("board", ".rle");
+        try {
+            play(new BoardGenerator(sizes[0], sizes[0], wallDensity, waterDensity, 1, 1, 1).generate(seed), file, maxmoves);    // not measured, lets the JIT compiler warm up
+            System.out.printf("%-7s %-5s %6s %9s %10s %11s %10s %11s  %s%n",
+                    "size", "won", "moves", "time ms", "us/move", "slowest ms", "alloc MB", "retained KB", "BoardGenerator arguments");
+            for (int i = 0; i < sizes.length; i++) {
+                int items = Math.max(1, sizes[i] * sizes[i] / TILES_PER_ITEM);
+                BoardGenerator generator = new BoardGenerator(sizes[i], sizes[i], wallDensity, waterDensity, items, items, items);
+                for (int b = 0; b < boards; b++) {
+                    long boardSeed = seed * 1000003 + sizes[i] * 1000 + b;
+                    Result result = play(generator.generate(boardSeed), file, maxmoves);
+                    System.out.printf("%3dx%-3d %-5s %6d %9d %10d %11d %10d %11d  -w %d -h %d -walls %s -water %s -doors %d -trees %d -dynamite %d -seed %d%n",
+                            sizes[i], sizes[i], result.won ? "yes" : "no", result.moves, result.nanos / 1000000,
+                            result.nanos / 1000 / Math.max(1, result.moves), result.slowestNanos / 1000000,
+                            result.allocatedBytes < 0 ? -1 : result.allocatedBytes >> 20, result.retainedBytes >> 10,
+                            sizes[i], sizes[i], wallDensity, waterDensity, items, items, items, boardSeed);
+                    meanMoves[i] += (double) result.moves / boards;
+                    meanMicrosPerMove[i] += (double) result.nanos / 1000 / Math.max(1, result.moves) / boards;
+                    meanRetainedKilobytes[i] += (double) (result.retainedBytes >> 10) / boards;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        plot("Moves", "mean", sizes, meanMoves);
+        plot("Time per move", "mean us", sizes, meanMicrosPerMove);
+        plot("Memory kept by the agent", "mean KB", sizes, meanRetainedKilobytes);
+    }
+}
@@ -0,0 +1,112 @@
+package network;
+
+import agent.Agent;
+import agent.WorldModel;
+import pathfinding.Coordinate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Checks that snapshots of the world model (see WorldModel.snapshot) keep the map they were taken with. Plays a board
+ * in this process and takes a snapshot of the agent's world model every few moves, together with a description of it:
+ * its version, every explored tile with its symbol, and whether an unexplored tile is reachable in every stage, which
+ * is answered from the bitboards. Once the game is over every snapshot is described again and compared with the
+ * description taken with it. The live world model has written to the chunks and bitboards it shared with the
+ * snapshots many times by then, so a snapshot that changed means one of those writes did not copy first.
+ *
+ * Exits with status 0 if no snapshot changed and -1 otherwise, so it can be used in scripts.
+ */
+public class SnapshotCheck {
+
+    /**
+     * An agent that takes a snapshot of its world model every given number of moves.
+     */
+    private static class SnapshottingAgent extends Agent {
+        private final int every;
+        private int moves;
+        final ArrayList<WorldModel> snapshots = new ArrayList<>();
+        final ArrayList<String> descriptions = new ArrayList<>();
+
+        SnapshottingAgent(int every) {
+            this.every = every;
+        }
+
+        @Override
+        public char get_action(char[][] view) {
+            char action = super.get_action(view);
+            if (++moves % every == 0) {
+                WorldModel snapshot = snapshotWorldModel();
+                snapshots.add(snapshot);
+                descriptions.add(describe(snapshot));
+            }
+            return action;
+        }
+    }
+
+    /**
+     * Describes the map of a world model, see the class comment.
+     */
+    private static String describe(WorldModel worldModel) {
+        StringBuilder description = new StringBuilder().append(worldModel.getVersion());
+        for (Coordinate tile : worldModel.getExploredTiles()) {
+            description.append(' ').append(tile.x).append(',').append(tile.y).append(worldModel.getObjectAtCoordinate(tile.x, tile.y));
+        }
+        Coordinate start = new Coordinate(0, 0);
+        for (Agent.Stage stage : Agent.Stage.values()) {
+            description.append(' ').append(worldModel.isUnexploredTileReachable(start, false, stage))
+                    .append(worldModel.isUnexploredTileReachable(start, true, stage));
+        }
+        return description.toString();
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: java network.SnapshotCheck [-i <board>] [-every <moves>] [-m <maxmoves>]");
+        System.exit(-1);
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args see printUsage
+     */
+    public static void main(String[] args) throws IOException {
+        String board = "src/boards/s7.in";
+        int every = 50;
+        int maxmoves = 10000;
+
+        for (int k = 0; k < args.length; k++) {
+            if (k + 1 == args.length) {
+                printUsage();
+            }
+            switch (args[k++]) {
+                case "-i": board = args[k]; break;
+                case "-every": every = Math.max(1, Integer.parseInt(args[k])); break;
+                case "-m": maxmoves = Integer.parseInt(args[k]); break;
+                default: printUsage();
+            }
+        }
+
+        Raft game = Raft.load(board);
+        SnapshottingAgent agent = new SnapshottingAgent(every);
+        System.out.println(game.play(agent, null, maxmoves, true).trim());
+        WorldModel live = agent.snapshotWorldModel();
+
+        int changed = 0, older = 0;
+        for (int s = 0; s < agent.snapshots.size(); s++) {
+            WorldModel snapshot = agent.snapshots.get(s);
+            if (!describe(snapshot).equals(agent.descriptions.get(s))) {
+                System.out.println("Snapshot " + s + " (version " + snapshot.getVersion() + ") changed");
+                changed++;
+            }
+            if (snapshot.getVersion() < live.getVersion()) {
+                older++;
+            }
+        }
+        System.out.println(agent.snapshots.size() + " snapshots, " + older + " older than the final world model (version "
+                + live.getVersion() + "), " + changed + " changed");
+        if (changed > 0) {
+            System.exit(-1);
+        }
+    }
+}
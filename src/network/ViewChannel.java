@@ -0,0 +1,141 @@
+package network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One end of the connection between the game engine and an agent. The engine sends the 24 tiles of the agent's view
+ * (the 5x5 square around the agent, row by row, without the agent's own tile) as one byte each, and the agent answers
+ * with a single byte action. Every view is read and written as one 24 byte frame through a reusable buffer instead of
+ * one stream call per byte, and Nagle's algorithm is turned off so the small frames are sent right away.
+ */
+public class ViewChannel implements Closeable {
+
+    /**
+     * The number of bytes in a view frame.
+     */
+    public static final int VIEW_FRAME_SIZE = 24;
+
+    private final SocketChannel channel;
+    private final ByteBuffer viewBuffer = ByteBuffer.allocateDirect(VIEW_FRAME_SIZE);
+    private final ByteBuffer actionBuffer = ByteBuffer.allocateDirect(1);
+
+    public ViewChannel(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(true);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /**
+     * Connects to a game engine.
+     *
+     * @param host the host the engine runs on
+     * @param port the port the engine listens on
+     * @return the agent's end of the connection
+     * @throws IOException if the connection fails
+     */
+    public static ViewChannel connect(String host, int port) throws IOException {
+        return new ViewChannel(SocketChannel.open(new InetSocketAddress(host, port)));
+    }
+
+    /**
+     * Waits for a single agent to connect to the given port, then stops listening.
+     *
+     * @param port the port to listen on
+     * @return the engine's end of the connection
+     * @throws IOException if listening or accepting fails
+     */
+    public static ViewChannel acceptOne(int port) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            return new ViewChannel(server.accept());
+        }
+    }
+
+    /**
+     * Reads one view frame into the given 5x5 view. The agent's own tile in the middle is left unchanged.
+     *
+     * @param view the array to fill
+     * @return false if the connection was closed before a whole frame arrived, true otherwise
+     * @throws IOException if reading fails
+     */
+    public boolean readView(char[][] view) throws IOException {
+        viewBuffer.clear();
+        while (viewBuffer.hasRemaining()) {
+            if (channel.read(viewBuffer) < 0) {
+                return false;
+            }
+        }
+        viewBuffer.flip();
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5; j++) {
+                if (!(i == 2 && j == 2)) {
+                    view[i][j] = (char) (viewBuffer.get() & 0xFF);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends the given 5x5 view as one frame, leaving out the agent's own tile in the middle.
+     *
+     * @param view the view to send
+     * @throws IOException if writing fails
+     */
+    public void writeView(char[][] view) throws IOException {
+        viewBuffer.clear();
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5; j++) {
+                if (!(i == 2 && j == 2)) {
+                    viewBuffer.put((byte) view[i][j]);
+                }
+            }
+        }
+        viewBuffer.flip();
+        writeFully(viewBuffer);
+    }
+
+    /**
+     * Reads one action.
+     *
+     * @return the action, or -1 if the connection was closed
+     * @throws IOException if reading fails
+     */
+    public int readAction() throws IOException {
+        actionBuffer.clear();
+        if (channel.read(actionBuffer) < 0) {
+            return -1;
+        }
+        return actionBuffer.get(0) & 0xFF;
+    }
+
+    /**
+     * Sends one action.
+     *
+     * @param action the action to send
+     * @throws IOException if writing fails
+     */
+    public void writeAction(char action) throws IOException {
+        actionBuffer.clear();
+        actionBuffer.put((byte) action);
+        actionBuffer.flip();
+        writeFully(actionBuffer);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
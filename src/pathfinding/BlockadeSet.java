@@ -0,0 +1,176 @@
+package pathfinding;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of the blockades removed on the way to a state. The set is a persistent linked list: adding a
+ * coordinate creates one new node pointing at the old set, so a state and all of its successors share the same nodes
+ * instead of each holding its own copy.
+ *
+ * Every node also stores a Zobrist-style hash of the whole set, which is the sum of a 64-bit key per coordinate and is
+ * updated with one addition when a coordinate is added. StateTable uses the hash as part of a state's fingerprint;
+ * equals compares the size, hash and filter first, so sets that differ are almost always told apart without looking
+ * at their coordinates, and only compares the coordinates themselves when all three match.
+ */
+public final class BlockadeSet implements Iterable<Coordinate> {
+
+    /**
+     * The empty set, which every other set ends in.
+     */
+    public static final BlockadeSet EMPTY = new BlockadeSet(null, null);
+
+    private final Coordinate head;
+    private final BlockadeSet tail;
+    private final int size;
+
+    /**
+     * Zobrist hash of the set: the sum of the keys of all coordinates.
+     */
+    private final long hash;
+
+    /**
+     * Sum of the hash codes of all coordinates, which is what a HashSet of the same coordinates would return.
+     */
+    private final int hashCode;
+
+    /**
+     * One bit per coordinate, chosen by its key. A coordinate whose bit is not set is not in the set.
+     */
+    private final long filter;
+
+    private BlockadeSet(Coordinate head, BlockadeSet tail) {
+        this.head = head;
+        this.tail = tail;
+        if (tail == null) {
+            size = 0;
+            hash = 0;
+            hashCode = 0;
+            filter = 0;
+        } else {
+            long key = key(head.x, head.y);
+            size = tail.size + 1;
+            hash = tail.hash + key;
+            hashCode = tail.hashCode + head.hashCode();
+            filter = tail.filter | 1L << (key >>> 58);
+        }
+    }
+
+    /**
+     * Returns a set containing the coordinates of this set plus the given coordinate. This set is not changed.
+     *
+     * @param coordinate the coordinate to add
+     * @return the new set, or this set if it already contains the coordinate
+     */
+    public BlockadeSet with(Coordinate coordinate) {
+        return contains(coordinate) ? this : new BlockadeSet(coordinate, this);
+    }
+
+    public boolean contains(Coordinate coordinate) {
+        return contains(coordinate.x, coordinate.y);
+    }
+
+    public boolean contains(int x, int y) {
+        if ((filter & 1L << (key(x, y) >>> 58)) == 0) {
+            return false;
+        }
+        for (BlockadeSet set = this; set.tail != null; set = set.tail) {
+            if (set.head.x == x && set.head.y == y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the Zobrist hash of the set, which does not depend on the order the coordinates were added in.
+     *
+     * @return the 64-bit hash of the set
+     */
+    long zobristHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the Zobrist hash the set would have after adding the given coordinate, without creating the new set.
+     *
+     * @param x the x coordinate to add
+     * @param y the y coordinate to add
+     * @return the 64-bit hash of the set with the coordinate added
+     */
+    long zobristHashWith(int x, int y) {
+        return contains(x, y) ? hash : hash + key(x, y);
+    }
+
+    /**
+     * Returns the 64-bit Zobrist key of a coordinate.
+     */
+    private static long key(int x, int y) {
+        long h = ((long) x << 32 ^ y & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+        return h ^ h >>> 29;
+    }
+
+    @Override
+    public Iterator<Coordinate> iterator() {
+        return new Iterator<Coordinate>() {
+            private BlockadeSet next = BlockadeSet.this;
+
+            @Override
+            public boolean hasNext() {
+                return next.tail != null;
+            }
+
+            @Override
+            public Coordinate next() {
+                if (next.tail == null) {
+                    throw new NoSuchElementException();
+                }
+                Coordinate coordinate = next.head;
+                next = next.tail;
+                return coordinate;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (!(other instanceof BlockadeSet)) {
+            return false;
+        }
+        BlockadeSet set = (BlockadeSet) other;
+        if (size != set.size || hash != set.hash || filter != set.filter) {
+            return false;
+        }
+        for (BlockadeSet rest = this; rest.tail != null; rest = rest.tail) {     // the sizes match, so one way is enough
+            if (!set.contains(rest.head)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (Coordinate coordinate : this) {
+            builder.append(builder.length() > 1 ? ", " : "").append(coordinate);
+        }
+        return builder.append("]").toString();
+    }
+}
@@ -4,7 +4,6 @@ import agent.Agent;
 import agent.WorldModel;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 
 /**
  * This class is used when all you are interested in is the coordinates and nothing else.
@@ -28,16 +27,16 @@ public class Coordinate {
      */
     ArrayList<Coordinate> generateBFSNeighbors(WorldModel worldModel, boolean hasKey, Agent.Stage stage) {
         ArrayList<Coordinate> newStates = new ArrayList<>();
-        if (!worldModel.positionBlocked(x - 1, y, hasKey, new HashSet<>(), stage)) {
+        if (!worldModel.positionBlocked(x - 1, y, hasKey, stage)) {
             newStates.add(new Coordinate(x - 1, y));
         }
-        if (!worldModel.positionBlocked(x, y - 1, hasKey, new HashSet<>(), stage)) {
+        if (!worldModel.positionBlocked(x, y - 1, hasKey, stage)) {
             newStates.add(new Coordinate(x, y - 1));
         }
-        if (!worldModel.positionBlocked(x + 1, y, hasKey, new HashSet<>(), stage)) {
+        if (!worldModel.positionBlocked(x + 1, y, hasKey, stage)) {
             newStates.add(new Coordinate(x + 1, y));
         }
-        if (!worldModel.positionBlocked(x, y + 1, hasKey, new HashSet<>(), stage)) {
+        if (!worldModel.positionBlocked(x, y + 1, hasKey, stage)) {
             newStates.add(new Coordinate(x, y + 1));
         }
         return newStates;
@@ -4,9 +4,101 @@ import agent.Agent;
 import agent.WorldModel;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Explore {
 
+    /**
+     * The default maximum number of states A* expands before giving up. The state space of large maps is way too
+     * large for us to search the entire thing.
+     */
+    static final int DEFAULT_CUTOFF = 25000;
+
+    /**
+     * The number of worker threads used by PLANNED stage searches. With more than one thread the search is done by
+     * HashDistributedAStar, which is not deterministic: the path found may differ between runs. Can be set with the
+     * system property pathfinding.threads. Never more threads than available processors are used.
+     */
+    private static int searchThreads = Integer.getInteger("pathfinding.threads", 1);
+
+    /**
+     * The maximum number of states a single threaded A* search may store at once, 0 for no limit. With a limit the
+     * search is done by MemoryBoundedAStar, which forgets the least promising states instead of storing every state it
+     * has seen. Forgotten states may have to be generated again, so a limit far below the cutoff makes searches run
+     * out of expansions more often (10000 still solves all the bundled boards). Can be set with the system property
+     * pathfinding.nodeLimit.
+     */
+    private static int nodeLimit = Integer.getInteger("pathfinding.nodeLimit", 0);
+
+    /**
+     * The open/closed table of the single threaded A* search, reused between searches to avoid reallocating it.
+     */
+    private static final ThreadLocal<StateTable> visitedTable = ThreadLocal.withInitial(StateTable::new);
+
+    /**
+     * The states of the single threaded A* search, reused between searches so that searches do not allocate states.
+     */
+    private static final ThreadLocal<StateArena> stateArena = ThreadLocal.withInitial(StateArena::new);
+
+    /**
+     * The single threaded A* searches done since the world last changed, so that a search asked for again is answered
+     * without searching.
+     */
+    private static final ThreadLocal<SearchCache> searchCache = ThreadLocal.withInitial(SearchCache::new);
+
+    /**
+     * The worker threads of HashDistributedAStar, kept alive between searches so that a search does not start and stop
+     * its own threads. The pool grows to as many threads as the searches running at the same time need: the workers
+     * of a search wait for each other, so they must never wait for a free thread. Idle threads end after a minute.
+     */
+    private static final ExecutorService searchWorkers = Executors.newCachedThreadPool(new WorkerThreadFactory());
+
+    /**
+     * Creates the daemon threads of searchWorkers, so that an idle worker never keeps the program running.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "astar-worker-" + created.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Sets the number of worker threads used by PLANNED stage searches.
+     *
+     * @param threads the number of worker threads, 1 to search on the calling thread
+     */
+    public static void setSearchThreads(int threads) {
+        searchThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the maximum number of states a single threaded A* search may store at once.
+     *
+     * @param limit the maximum number of states, 0 for no limit
+     */
+    public static void setNodeLimit(int limit) {
+        nodeLimit = Math.max(0, limit);
+    }
+
+    /**
+     * Describes the search settings in effect as the system properties that set them: the number of worker threads
+     * actually used and the node limit.
+     *
+     * @return the settings, e.g. "pathfinding.threads=1 pathfinding.nodeLimit=0"
+     */
+    public static String getSettings() {
+        return "pathfinding.threads=" + Math.min(searchThreads, Runtime.getRuntime().availableProcessors())
+                + " pathfinding.nodeLimit=" + nodeLimit;
+    }
+
     /**
      * Uses BFS to find an unexplored tile (a tile where, if the agent stood in it, would reveal tiles not yet seen)
 
@@ -17,16 +109,29 @@ public class Explore {
      * @return a state that is an unexplored tile, null if no tile is found
      */
     public static Coordinate findUnexploredTile(Coordinate currentCoordinate, WorldModel worldModel, boolean hasKey, Agent.Stage stage) {
+        SearchStats stats = SearchStats.start("BFS", stage, currentCoordinate.x, currentCoordinate.y, "unexplored tile");
+        Coordinate unexploredTile = findUnexploredTile(currentCoordinate, worldModel, hasKey, stage, stats);
+        stats.finish(unexploredTile != null);
+        return unexploredTile;
+    }
+
+    private static Coordinate findUnexploredTile(Coordinate currentCoordinate, WorldModel worldModel, boolean hasKey, Agent.Stage stage, SearchStats stats) {
         HashSet<Coordinate> discovered = new HashSet<>();
         ArrayList<Coordinate> queue = new ArrayList<>();
         int agentCurrentPositionX = currentCoordinate.x;
         int agentCurrentPositionY = currentCoordinate.y;
 
+        if (!worldModel.isUnexploredTileReachable(currentCoordinate, hasKey, stage)) {
+            return null;    // cheap bitboard check, saves walking the whole reachable area when there is nothing left to explore
+        }
+
         discovered.add(currentCoordinate);
         queue.add(currentCoordinate);
 
         while (!queue.isEmpty()) {
+            stats.openSize(queue.size());
             currentCoordinate = queue.remove(0);
+            stats.expanded++;
             if (worldModel.isUnexplored(currentCoordinate) && !(currentCoordinate.x == agentCurrentPositionX && currentCoordinate.y == agentCurrentPositionY)) {
                 return currentCoordinate;
             }
@@ -57,72 +162,104 @@ public class Explore {
      * @return a list of states forming a path from the start state to the goal state, empty list if no path is found
      */
     public static ArrayList<State> findPath(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState) {
-        HashSet<State> closedSet = new HashSet<>();
-        HashSet<State> openSet = new HashSet<>();
-        int cutoff = 25000; // the state space of large maps is way too large for us to search the entire thing
-        
-        openSet.add(startState);
+        return findPath(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, DEFAULT_CUTOFF);
+    }
 
-        startState.setH(startState.heuristic(goalState, worldModel, stage, goldState));
+    /**
+     * Uses A* to find the shortest path from startState to goalState, expanding at most cutoff states.
+     *
+     * @param startState the state to start the search from
+     * @param goalState a goal state coordinate
+     * @param worldModel the world model of the agent
+     * @param stage which stage the agent is currently in
+     * @param legalDynamiteCoordinates list of coordinates that are legal to use dynamite on, null if any coordinate is legal
+     * @param goldState coordinates of the gold state to be used in the heuristic, null if distance to gold state should not be included in heuristic
+     * @param cutoff the maximum number of states to expand
+     * @return a list of states forming a path from the start state to the goal state, empty list if no path is found
+     */
+    static ArrayList<State> findPath(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff) {
+        int threads = Math.min(searchThreads, Runtime.getRuntime().availableProcessors());  // workers sharing a core expand states far from the global best
+        SearchStats stats;
+        ArrayList<State> path;
+        if (stage == Agent.Stage.PLANNED && threads > 1) {
+            stats = SearchStats.start("HDA*", stage, startState.getRelativeCoordX(), startState.getRelativeCoordY(), goalState);
+            path = HashDistributedAStar.findPath(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, cutoff, threads, searchWorkers, stats);
+        } else if (nodeLimit > 0) {
+            stats = SearchStats.start("SMA*", stage, startState.getRelativeCoordX(), startState.getRelativeCoordY(), goalState);
+            path = MemoryBoundedAStar.findPath(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, cutoff, nodeLimit, stats);
+        } else {
+            stats = SearchStats.start("A*", stage, startState.getRelativeCoordX(), startState.getRelativeCoordY(), goalState);
+            SearchCache cache = searchCache.get();
+            path = cache.lookup(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, cutoff);
+            if (path != null) {
+                stats.cached = true;
+            } else {
+                path = findPathSequential(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, cutoff, stats);
+                cache.store(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, cutoff, path);
+            }
+        }
+        stats.hitCutoff = path.isEmpty() && stats.expanded >= cutoff;
+        stats.finish(!path.isEmpty());
+        return path;
+    }
 
-        startState.setG(0);
+    /**
+     * The single threaded A* search used by findPath, recording its statistics in the given stats.
+     */
+    private static ArrayList<State> findPathSequential(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff, SearchStats stats) {
+        return new ResumableSearch(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, visitedTable.get(), stateArena.get()).run(cutoff, stats);
+    }
 
-        while (!openSet.isEmpty() && closedSet.size() < cutoff) {
-            State bestState = null;
-            int bestStateF = Integer.MAX_VALUE;
-            for (State state : openSet) {
-                if (state.getF() < bestStateF) {
-                    bestState = state;
-                    bestStateF = state.getF();
-                }
-            }
-            State currentState = bestState;
-            if (currentState == null) {
-                return new ArrayList<>();
-            }
-            if (currentState.getRelativeCoordX() == goalState.x && currentState.getRelativeCoordY() == goalState.y &&   // if currentState is in the correct position
-                    (currentState.getDynamiteCount() >= 0 || currentState.getDynamiteCount() < -WorldModel.WORLD_HEIGHT*WorldModel.WORLD_WIDTH) &&  // if the dynamite count is non-negative OR is an extremely low number (meaning using dynamites is banned)
-                    (goldState == null || currentState.hasGold())) {        // if the agent has the gold OR we don't care about the gold
-                ArrayList<State> path = new ArrayList<>();
-                path.add(currentState);
-                while (currentState.getParent() != null) {
-                    path.add(currentState.getParent());
-                    currentState = currentState.getParent();
-                }
-                Collections.reverse(path);
-                return path;
-            }
-            openSet.remove(currentState);
-            closedSet.add(currentState);
+    /**
+     * Starts a search like findPath that can be resumed with another budget when it runs out of expansions, see
+     * ResumableSearch. Nothing is searched until the search is resumed for the first time. Only the single threaded A*
+     * search can be resumed, so there is no such search if the stage is searched with HashDistributedAStar or
+     * MemoryBoundedAStar.
+     *
+     * @param startState the state to start the search from
+     * @param goalState a goal state coordinate
+     * @param worldModel the world model of the agent
+     * @param stage which stage the agent is currently in
+     * @param legalDynamiteCoordinates list of coordinates that are legal to use dynamite on, null if any coordinate is legal
+     * @param goldState coordinates of the gold state to be used in the heuristic, null if distance to gold state should not be included in heuristic
+     * @return the search, null if searches in the given stage can not be resumed
+     */
+    public static ResumableSearch startSearch(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState) {
+        if ((stage == Agent.Stage.PLANNED && Math.min(searchThreads, Runtime.getRuntime().availableProcessors()) > 1) || nodeLimit > 0) {
+            return null;
+        }
+        return new ResumableSearch(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, new StateTable(), new StateArena());
+    }
 
-            ArrayList<State> neighborStates;
-            neighborStates = currentState.generateAStarNeighbors(worldModel, stage, legalDynamiteCoordinates);
+    /**
+     * Returns whether the given state is a goal state of an A* search.
+     *
+     * @param state the state to check
+     * @param goalState a goal state coordinate
+     * @param goldState coordinates of the gold state, null if the agent does not need the gold
+     * @return true if the state is a goal state, false otherwise
+     */
+    static boolean isGoal(State state, Coordinate goalState, Coordinate goldState) {
+        return state.getRelativeCoordX() == goalState.x && state.getRelativeCoordY() == goalState.y &&   // if state is in the correct position
+                (state.getDynamiteCount() >= 0 || state.getDynamiteCount() < Integer.MIN_VALUE / 2) &&  // if the dynamite count is non-negative OR is an extremely low number (meaning using dynamites is banned)
+                (goldState == null || state.hasGold());        // if the agent has the gold OR we don't care about the gold
+    }
 
-            for (State state : neighborStates) {
-                if (closedSet.contains(state)) {
-                    continue;
-                }
-                int tentativeGScore;
-                tentativeGScore = currentState.getG() + 1;
-                if (!openSet.contains(state)) {
-                    state.setH(state.heuristic(goalState, worldModel, stage, goldState));
-                    openSet.add(state);
-                } else {
-                    for (State openSetState : openSet) {  // if we generate a duplicate state, make sure we use the old one
-                        if (openSetState.equals(state)) {
-                            state = openSetState;
-                            break;
-                        }
-                    }
-                    if (tentativeGScore >= state.getG()) {
-                        continue;
-                    }
-                }
-                state.setParent(currentState);
-                state.setG(tentativeGScore);
-            }
+    /**
+     * Follows the parents of the given state back to the start state.
+     *
+     * @param state the last state of the path
+     * @return a list of states forming a path from the start state to the given state
+     */
+    static ArrayList<State> reconstructPath(State state) {
+        ArrayList<State> path = new ArrayList<>();
+        path.add(state);
+        while (state.getParent() != null) {
+            path.add(state.getParent());
+            state = state.getParent();
         }
-        return new ArrayList<>();
+        Collections.reverse(path);
+        return path;
     }
 
     /**
@@ -134,15 +271,22 @@ public class Explore {
      * @return a list of states forming a path from the start state to the goal state, empty list if no path is found
      */
     public static ArrayList<State> findClosestTileOfType(char type, State startState, WorldModel worldModel) {
+        SearchStats stats = SearchStats.start("Dijkstra", null, startState.getRelativeCoordX(), startState.getRelativeCoordY(), type);
+        ArrayList<State> path = findClosestTileOfType(type, startState, worldModel, stats);
+        stats.finish(!path.isEmpty());
+        return path;
+    }
+
+    private static ArrayList<State> findClosestTileOfType(char type, State startState, WorldModel worldModel, SearchStats stats) {
         ArrayList<Coordinate> coordinates = worldModel.getExploredTiles();
         ArrayList<State> states = new ArrayList<>();
 
         for (Coordinate coordinate : coordinates) {
             states.addAll(Arrays.asList(
-                    new State(coordinate.x, coordinate.y, 'N'),
-                    new State(coordinate.x, coordinate.y, 'W'),
-                    new State(coordinate.x, coordinate.y, 'S'),
-                    new State(coordinate.x, coordinate.y, 'E')
+                    new State(coordinate.x, coordinate.y, Orientation.NORTH),
+                    new State(coordinate.x, coordinate.y, Orientation.WEST),
+                    new State(coordinate.x, coordinate.y, Orientation.SOUTH),
+                    new State(coordinate.x, coordinate.y, Orientation.EAST)
             ));
         }
         for (State state : states) {
@@ -150,8 +294,10 @@ public class Explore {
         }
         startState.setG(0);
         states.add(startState);
+        stats.openSize(states.size());
 
         while (!states.isEmpty()) {
+            stats.expanded++;
             State bestState = null;
             int bestCoordinateValue = Integer.MAX_VALUE;
             for (State state : states) {
@@ -197,19 +343,28 @@ public class Explore {
      * @return a list of coordinates that were blown up in the least dynamite path from startState to goalState
      */
     public static ArrayList<Coordinate> leastDynamitePath(State startState, Coordinate goalState, WorldModel worldModel) {
+        SearchStats stats = SearchStats.start("Least dynamite", null, startState.getRelativeCoordX(), startState.getRelativeCoordY(), goalState);
+        ArrayList<Coordinate> dynamiteCoordinates = leastDynamitePath(startState, goalState, worldModel, stats);
+        stats.finish(dynamiteCoordinates != null);
+        return dynamiteCoordinates;
+    }
+
+    private static ArrayList<Coordinate> leastDynamitePath(State startState, Coordinate goalState, WorldModel worldModel, SearchStats stats) {
         ArrayList<Coordinate> coordinates = worldModel.getExploredTiles();
         ArrayList<State> states = new ArrayList<>();
 
         for (Coordinate coordinate : coordinates) {
-            State state = new State(coordinate.x, coordinate.y, 'N');
+            State state = new State(coordinate.x, coordinate.y, Orientation.NORTH);
             state.setG(Integer.MAX_VALUE);
             states.add(state);
         }
 
         startState.setG(0);
         states.add(startState);
+        stats.openSize(states.size());
 
         while (!states.isEmpty()) {
+            stats.expanded++;
             State bestState = null;
             int bestStateValue = Integer.MAX_VALUE;
             for (State state : states) {
@@ -267,25 +422,13 @@ public class Explore {
         if (!(worldModel.getObjectAtCoordinate(s1.getRelativeCoordX(), s1.getRelativeCoordY()) == ' ' && (worldModel.getObjectAtCoordinate(s2.getRelativeCoordX(), s2.getRelativeCoordY()) == ' ' || worldModel.getObjectAtCoordinate(s2.getRelativeCoordX(), s2.getRelativeCoordY()) == type))) {
             return false;
         }
-        if (s1.getRelativeCoordX() - s2.getRelativeCoordX() == 0 && s1.getRelativeCoordY() - s2.getRelativeCoordY() == 0) {
-            ArrayList<Character> directions = new ArrayList<>(Arrays.asList('N', 'W', 'S', 'E'));
-            if (Math.abs(directions.indexOf(s1.getRelativeAgentOrientation()) - directions.indexOf(s2.getRelativeAgentOrientation())) == 1 ||
-                    (s1.getRelativeAgentOrientation() == 'N' && s2.getRelativeAgentOrientation() == 'E') ||
-                    (s1.getRelativeAgentOrientation() == 'E' && s2.getRelativeAgentOrientation() == 'N')) {
-                return true;
-            }
-        }
-        switch (s1.getRelativeAgentOrientation()) {
-            case 'N':
-                return s1.getRelativeCoordX() - s2.getRelativeCoordX() == 0 && s1.getRelativeCoordY() - s2.getRelativeCoordY() == 1 && s2.getRelativeAgentOrientation() == 'N';
-            case 'W':
-                return s1.getRelativeCoordX() - s2.getRelativeCoordX() == 1 && s1.getRelativeCoordY() - s2.getRelativeCoordY() == 0 && s2.getRelativeAgentOrientation() == 'W';
-            case 'S':
-                return s1.getRelativeCoordX() - s2.getRelativeCoordX() == 0 && s1.getRelativeCoordY() - s2.getRelativeCoordY() == -1 && s2.getRelativeAgentOrientation() == 'S';
-            case 'E':
-                return s1.getRelativeCoordX() - s2.getRelativeCoordX() == -1 && s1.getRelativeCoordY() - s2.getRelativeCoordY() == 0 && s2.getRelativeAgentOrientation() == 'E';
+        if (s1.getRelativeCoordX() == s2.getRelativeCoordX() && s1.getRelativeCoordY() == s2.getRelativeCoordY()) {
+            return s2.getRelativeAgentOrientation() == Orientation.turnLeft(s1.getRelativeAgentOrientation()) ||
+                    s2.getRelativeAgentOrientation() == Orientation.turnRight(s1.getRelativeAgentOrientation());
         }
-        return false;
+        return s2.getRelativeAgentOrientation() == s1.getRelativeAgentOrientation() &&
+                s2.getRelativeCoordX() - s1.getRelativeCoordX() == Orientation.xOffset(s1.getRelativeAgentOrientation()) &&
+                s2.getRelativeCoordY() - s1.getRelativeCoordY() == Orientation.yOffset(s1.getRelativeAgentOrientation());
     }
 
 
@@ -304,10 +447,7 @@ public class Explore {
             if (fromState.getRelativeCoordX() != toState.getRelativeCoordX() || fromState.getRelativeCoordY() != toState.getRelativeCoordY()) { // position changed, the agent must move forward
                 actions.add('f');
             } else if (fromState.getRelativeAgentOrientation() != toState.getRelativeAgentOrientation()) {  // rotation changed, the agent must turn left or right
-                if (toState.getRelativeAgentOrientation() == 'W' && fromState.getRelativeAgentOrientation() == 'N' ||       // if turned left
-                        toState.getRelativeAgentOrientation() == 'S' && fromState.getRelativeAgentOrientation() == 'W' ||
-                        toState.getRelativeAgentOrientation() == 'E' && fromState.getRelativeAgentOrientation() == 'S' ||
-                        toState.getRelativeAgentOrientation() == 'N' && fromState.getRelativeAgentOrientation() == 'E') {
+                if (toState.getRelativeAgentOrientation() == Orientation.turnLeft(fromState.getRelativeAgentOrientation())) {     // if turned left
                     actions.add('l');
                 } else {
                     actions.add('r');
@@ -0,0 +1,240 @@
+package pathfinding;
+
+import agent.Agent;
+import agent.WorldModel;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parallel version of the A* search in Explore (hash distributed A*). Every state is owned by one worker thread,
+ * chosen by the hash of the state. Each worker keeps its own open and closed set for the states it owns. When a worker
+ * expands a state, each neighbor is sent to the inbox of its owner, which is a lock-free queue. The owner then decides
+ * whether to add the neighbor to its open set, exactly like the single threaded search does.
+ *
+ * A state is only ever modified by its owner, so the parent pointers stay consistent and the path can be reconstructed
+ * the same way as in the single threaded search once all workers have stopped. Since the workers do not expand states
+ * in global F-value order, the first goal state found is not necessarily the one the single threaded search would have
+ * found. The goal state is therefore only an incumbent: the workers keep expanding states with a lower F-value than the
+ * incumbent, and stop when there are no such states left in any open set or inbox, or when the total number of
+ * expanded states reaches the cutoff.
+ */
+class HashDistributedAStar {
+
+    /**
+     * The number of times an idle worker spins before it starts parking. Neighbors sent by a busy worker usually arrive
+     * within microseconds, so a short spin is cheaper than parking.
+     */
+    private static final int SPIN_ROUNDS = 100;
+
+    /**
+     * The longest an idle worker parks at a time. Parking doubles from a microsecond up to this, so a worker waiting
+     * for a slow one gives up its core, but does not sleep through much of the search.
+     */
+    private static final long MAX_PARK_NANOS = 100_000;
+
+    private final Coordinate goalState;
+    private final WorldModel worldModel;
+    private final Agent.Stage stage;
+    private final ArrayList<Coordinate> legalDynamiteCoordinates;
+    private final Coordinate goldState;
+    private final int cutoff;
+
+    /**
+     * One inbox per worker, containing neighbor states generated by other workers. The parent and G-value of a state
+     * are set by the sender before the state is put in the inbox.
+     */
+    private final ArrayList<ConcurrentLinkedQueue<State>> inboxes = new ArrayList<>();
+
+    /**
+     * The number of states in inboxes plus the number of states in open queues. The search is done when this reaches
+     * zero. Counted up before a state is sent, and down only after a state's neighbors have been sent.
+     */
+    private final AtomicInteger work = new AtomicInteger();
+
+    /**
+     * The total number of states expanded by all workers.
+     */
+    private final AtomicInteger expanded = new AtomicInteger();
+
+    /**
+     * The goal state with the lowest F-value found so far by any worker.
+     */
+    private final AtomicReference<State> goal = new AtomicReference<>();
+
+    /**
+     * The largest value of work seen by any worker, reported as the peak open set size of the search.
+     */
+    private volatile int peakWork;
+
+    private HashDistributedAStar(Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff, int threads) {
+        this.goalState = goalState;
+        this.worldModel = worldModel;
+        this.stage = stage;
+        this.legalDynamiteCoordinates = legalDynamiteCoordinates;
+        this.goldState = goldState;
+        this.cutoff = cutoff;
+        for (int i = 0; i < threads; i++) {
+            inboxes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Uses a parallel A* to find a path from startState to goalState. Takes the same arguments as Explore.findPath,
+     * plus the number of worker threads. The world model must not be changed while the search runs.
+     *
+     * @param threads the number of worker threads
+     * @param workers the pool that runs the workers, which must be able to run all of them at the same time
+     * @param stats receives the statistics of the search
+     * @return a list of states forming a path from the start state to the goal state, empty list if no path is found
+     */
+    static ArrayList<State> findPath(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff, int threads, ExecutorService workers, SearchStats stats) {
+        HashDistributedAStar search = new HashDistributedAStar(goalState, worldModel, stage, legalDynamiteCoordinates, goldState, cutoff, threads);
+        startState.setG(0);
+        search.send(startState);
+
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            tasks.add(() -> {
+                search.run(worker);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> task : workers.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();     // invokeAll has cancelled the workers
+            return new ArrayList<>();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A search worker failed", e.getCause());
+        }
+        stats.expanded = search.expanded.get();
+        stats.openSize(search.peakWork);
+        State goal = search.goal.get();
+        if (goal == null) {
+            return new ArrayList<>();
+        }
+        return Explore.reconstructPath(goal);
+    }
+
+    /**
+     * Returns which worker owns the given state.
+     */
+    private int owner(State state) {
+        return Math.floorMod(state.hashCode(), inboxes.size());
+    }
+
+    private void send(State state) {
+        work.incrementAndGet();
+        inboxes.get(owner(state)).add(state);
+    }
+
+    /**
+     * The main loop of one worker.
+     *
+     * @param worker the index of the worker
+     */
+    private void run(int worker) {
+        ConcurrentLinkedQueue<State> inbox = inboxes.get(worker);
+        PriorityQueue<State> openQueue = new PriorityQueue<>(Comparator.comparingInt(State::getF));
+        HashMap<State, State> openSet = new HashMap<>();   // maps a state to the instance currently in the open queue
+        HashSet<State> closedSet = new HashSet<>();
+        int idleRounds = 0;
+
+        while (expanded.get() < cutoff && !Thread.currentThread().isInterrupted()) {
+            State received;
+            while ((received = inbox.poll()) != null) {
+                State existing = openSet.get(received);
+                if (closedSet.contains(received) || (existing != null && received.getG() >= existing.getG())) {
+                    work.decrementAndGet();
+                    continue;
+                }
+                received.setH(received.heuristic(goalState, worldModel, stage, goldState));
+                if (!improvesOnGoal(received)) {
+                    work.decrementAndGet();
+                    continue;
+                }
+                openSet.put(received, received);    // the instance already in the open queue (if any) becomes outdated
+                openQueue.add(received);
+            }
+
+            State currentState = openQueue.poll();
+            if (currentState == null) {
+                if (work.get() == 0) {
+                    return;     // no states left anywhere
+                }
+                waitForWork(++idleRounds);
+                continue;
+            }
+            idleRounds = 0;
+            if (openSet.get(currentState) != currentState || !improvesOnGoal(currentState)) {
+                work.decrementAndGet();     // a better instance of this state was received after this one, or a better goal is known
+                continue;
+            }
+            openSet.remove(currentState);
+            closedSet.add(currentState);
+            if (Explore.isGoal(currentState, goalState, goldState)) {
+                offerGoal(currentState);
+                work.decrementAndGet();
+                continue;
+            }
+            expanded.incrementAndGet();
+            int pending = work.get();
+            if (pending > peakWork) {
+                peakWork = pending;     // racy, but only used for reporting
+            }
+
+            for (State state : currentState.generateAStarNeighbors(worldModel, stage, legalDynamiteCoordinates)) {
+                state.setParent(currentState);
+                state.setG(currentState.getG() + 1);
+                send(state);
+            }
+            work.decrementAndGet();
+        }
+    }
+
+    /**
+     * Waits for neighbors sent by other workers: spins for the first SPIN_ROUNDS rounds, then parks for longer and
+     * longer, up to MAX_PARK_NANOS.
+     *
+     * @param idleRounds the number of times in a row the worker has found nothing to do, including this one
+     */
+    private static void waitForWork(int idleRounds) {
+        if (idleRounds <= SPIN_ROUNDS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(idleRounds - SPIN_ROUNDS - 1, 10)));
+        }
+    }
+
+    /**
+     * Returns whether the given state could lead to a better goal state than the best one found so far.
+     */
+    private boolean improvesOnGoal(State state) {
+        State best = goal.get();
+        return best == null || state.getF() < best.getF();
+    }
+
+    /**
+     * Replaces the best goal state found so far if the given goal state has a lower F-value.
+     */
+    private void offerGoal(State state) {
+        State best;
+        do {
+            best = goal.get();
+            if (best != null && best.getF() <= state.getF()) {
+                return;
+            }
+        } while (!goal.compareAndSet(best, state));
+    }
+}
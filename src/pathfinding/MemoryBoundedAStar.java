@@ -0,0 +1,235 @@
+package pathfinding;
+
+import agent.Agent;
+import agent.WorldModel;
+
+import java.util.*;
+
+/**
+ * Memory-bounded version of the A* search in Explore (simplified memory-bounded A*). The search never stores more than
+ * a given number of states in its open and closed sets combined. When the limit is reached, the open states with the
+ * highest F-values are forgotten. The lowest F-value of the forgotten children of a state is remembered in the state's
+ * parent, and a parent whose children have all been forgotten is moved back to the open set with that F-value, so
+ * the forgotten part of the search can be generated again later if it turns out to be the most promising one.
+ *
+ * Since only leaves of the search tree are ever forgotten, every state in the open and closed sets still has its whole
+ * chain of parents stored, and the path can be reconstructed the same way as in the regular search.
+ *
+ * A closed state without stored children is a leaf too. If none of its children were forgotten, there is nothing
+ * left to search below it: its successors were all closed already, lost to a better stored instance or found a better
+ * parent later. Such a dead end is forgotten as soon as it has no stored children, right after its expansion or when
+ * its last child goes, so that it never keeps its parent from becoming a leaf and having its forgotten children
+ * generated again. When the start state itself becomes a dead end, every state reachable from it has been searched.
+ */
+class MemoryBoundedAStar {
+
+    /**
+     * When the node limit is exceeded, states are forgotten until only this fraction of the limit is stored, so that
+     * forgetting is done in batches instead of on every expansion.
+     */
+    private static final double FORGET_TO_FRACTION = 0.9;
+
+    private final HashMap<State, OpenEntry> openSet = new HashMap<>();    // maps a state to its current queue entry
+    private final HashSet<State> closedSet = new HashSet<>();
+
+    /**
+     * The open states by F-value, oldest first among equal F-values. A state that leaves the open set or gets a new
+     * F-value leaves its old entry behind, which is skipped when it comes up. The queue is rebuilt from the open set
+     * whenever states are forgotten, so the outdated entries do not hold on to forgotten states.
+     */
+    private final PriorityQueue<OpenEntry> openQueue = new PriorityQueue<>(Comparator.<OpenEntry>comparingInt(entry -> entry.f).thenComparingLong(entry -> entry.order));
+    private long entries;
+
+    /**
+     * The number of stored children of each closed state.
+     */
+    private final HashMap<State, Integer> children = new HashMap<>();
+
+    /**
+     * The lowest F-value of the forgotten children of each closed state.
+     */
+    private final HashMap<State, Integer> forgottenF = new HashMap<>();
+
+    /**
+     * The F-value of states that were moved back to the open set after all their children were forgotten.
+     */
+    private final HashMap<State, Integer> backedUpF = new HashMap<>();
+
+    /**
+     * The start state of the search, which is never forgotten.
+     */
+    private State startState;
+
+    /**
+     * An open state with the F-value it had when it was queued.
+     */
+    private static final class OpenEntry {
+        final State state;
+        final int f;
+        final long order;
+
+        OpenEntry(State state, int f, long order) {
+            this.state = state;
+            this.f = f;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Uses memory-bounded A* to find a path from startState to goalState. Takes the same arguments as Explore.findPath,
+     * plus the maximum number of states to store at once.
+     *
+     * @param cutoff the maximum number of states to expand
+     * @param nodeLimit the maximum number of states stored in the open and closed sets combined
+     * @param stats receives the statistics of the search
+     * @return a list of states forming a path from the start state to the goal state, empty list if no path is found
+     */
+    static ArrayList<State> findPath(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff, int nodeLimit, SearchStats stats) {
+        return new MemoryBoundedAStar().search(startState, goalState, worldModel, stage, legalDynamiteCoordinates, goldState, cutoff, nodeLimit, stats);
+    }
+
+    private ArrayList<State> search(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff, int nodeLimit, SearchStats stats) {
+        this.startState = startState;
+        startState.setH(startState.heuristic(goalState, worldModel, stage, goldState));
+        startState.setG(0);
+        open(startState);
+
+        int expansions = 0;
+        while (!openSet.isEmpty() && expansions < cutoff) {
+            stats.openSize(openSet.size());
+            OpenEntry best = openQueue.poll();
+            if (openSet.get(best.state) != best) {
+                continue;   // outdated
+            }
+            State currentState = best.state;
+            if (Explore.isGoal(currentState, goalState, goldState)) {
+                return Explore.reconstructPath(currentState);
+            }
+            openSet.remove(currentState);
+            closedSet.add(currentState);
+            backedUpF.remove(currentState);
+            forgottenF.remove(currentState);    // the forgotten children are about to be generated again
+            expansions++;
+            stats.expanded = expansions;
+
+            for (State state : currentState.generateAStarNeighbors(worldModel, stage, legalDynamiteCoordinates)) {
+                if (closedSet.contains(state)) {
+                    continue;
+                }
+                int tentativeGScore = currentState.getG() + 1;
+                OpenEntry stored = openSet.get(state);
+                if (stored == null) {
+                    state.setH(state.heuristic(goalState, worldModel, stage, goldState));
+                } else {
+                    if (tentativeGScore >= stored.state.getG()) {
+                        continue;
+                    }
+                    state = stored.state;
+                    childRemoved(state.getParent());
+                }
+                state.setParent(currentState);
+                state.setG(tentativeGScore);
+                open(state);
+                children.merge(currentState, 1, Integer::sum);
+            }
+            if (!children.containsKey(currentState)) {
+                becameLeaf(currentState);   // a dead end, nothing was stored below it
+            }
+
+            if (openSet.size() + closedSet.size() > nodeLimit) {
+                forget((int) (nodeLimit * FORGET_TO_FRACTION));
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Adds a state to the open set, or queues it again with its new F-value if it is open already.
+     */
+    private void open(State state) {
+        OpenEntry entry = new OpenEntry(state, f(state), entries++);
+        openSet.put(state, entry);
+        openQueue.add(entry);
+    }
+
+    /**
+     * Returns the F-value of a state, taking into account the F-values backed up from forgotten children.
+     */
+    private int f(State state) {
+        Integer backedUp = backedUpF.get(state);
+        return backedUp == null ? state.getF() : Math.max(backedUp, state.getF());
+    }
+
+    /**
+     * Forgets the open states with the highest F-values until at most the given number of states are stored. A parent
+     * that loses its last child is moved back to the open set, where the next pass can forget it in turn, so the
+     * passes go on until the target is met. Every stored state but the start state is either an open leaf or a closed
+     * state with a stored child (see becameLeaf), so this always ends with at most max(target, 1) states stored.
+     *
+     * @param target the number of states to keep
+     */
+    private void forget(int target) {
+        boolean forgotten = true;
+        while (forgotten && openSet.size() + closedSet.size() > target) {
+            forgotten = false;
+            ArrayList<State> candidates = new ArrayList<>();
+            for (OpenEntry entry : openSet.values()) {
+                candidates.add(entry.state);
+            }
+            candidates.sort(Comparator.comparingInt(this::f).thenComparingInt(State::getG).reversed());
+            for (State state : candidates) {
+                if (openSet.size() + closedSet.size() <= target) {
+                    break;
+                }
+                if (state == startState || !openSet.containsKey(state)) {
+                    continue;
+                }
+                int stateF = f(state);
+                openSet.remove(state);
+                backedUpF.remove(state);
+                forgotten = true;
+                State parent = state.getParent();
+                if (parent != null && closedSet.contains(parent)) {
+                    forgottenF.merge(parent, stateF, Math::min);
+                    childRemoved(parent);
+                }
+            }
+        }
+        assert openSet.size() + closedSet.size() <= Math.max(target, 1);
+        openQueue.clear();
+        openQueue.addAll(openSet.values());
+    }
+
+    /**
+     * Updates a closed state that lost a stored child, because the child was forgotten or found a better parent.
+     *
+     * @param parent the state that lost a child
+     */
+    private void childRemoved(State parent) {
+        if (parent == null || !closedSet.contains(parent) || children.merge(parent, -1, Integer::sum) > 0) {
+            return;
+        }
+        children.remove(parent);
+        becameLeaf(parent);
+    }
+
+    /**
+     * Handles a closed state that has no stored children. If some of its children were forgotten, it is moved back to
+     * the open set with their lowest F-value so they can be generated again. Otherwise it is a dead end: it is
+     * forgotten and its parent loses a child. The start state is never forgotten: as a dead end it stays closed with
+     * nothing stored below it, so the open set is empty and the search ends.
+     *
+     * @param state the closed state without stored children
+     */
+    private void becameLeaf(State state) {
+        Integer lowestForgottenF = forgottenF.remove(state);
+        if (lowestForgottenF != null) {
+            closedSet.remove(state);
+            backedUpF.put(state, lowestForgottenF);
+            open(state);
+        } else if (state != startState) {
+            closedSet.remove(state);
+            childRemoved(state.getParent());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package pathfinding;
+
+import agent.Agent;
+import agent.WorldModel;
+import network.ReplayLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Compares MemoryBoundedAStar with the regular A* search on worlds the agent has actually seen. A recorded game (see
+ * ReplayLog) is fed to a new agent, and every few moves a snapshot of its world model is searched from a few start
+ * states, with and without dynamite, to a few explored tiles and home through the gold, by both searches with the same
+ * cutoff. A search fails the check when the memory-bounded search gives up before it has used up the cutoff although
+ * A* found a path or has not searched every state it can reach, which is what happens when it loses track of part of
+ * the search space. Searches where both find a path but the memory-bounded one is longer are counted, but do not fail:
+ * the PLANNED heuristic can overestimate, so neither search is sure to find the shortest path, and the two searches
+ * break ties between equal F-values differently.
+ *
+ * Run with the node limit set well below the number of states the searches expand, so that most of them hit it.
+ * Record a game with e.g. java network.Raft -i src/boards/s7.in -s -r s7.log.
+ *
+ * Exits with status 0 if every search passed and -1 otherwise, so it can be used in scripts.
+ */
+public class MemoryBoundedCheck {
+
+    private static void printUsage() {
+        System.out.println("Usage: java pathfinding.MemoryBoundedCheck <log> [-limit <states>] [-every <moves>] [-cutoff <expansions>]");
+        System.exit(-1);
+    }
+
+    /**
+     * Replays the log and returns a snapshot of the agent's world model every given number of moves.
+     */
+    private static ArrayList<WorldModel> snapshots(byte[] log, int every) {
+        ArrayList<WorldModel> snapshots = new ArrayList<>();
+        Agent agent = new Agent();
+        char[][] view = new char[5][5];
+        int first = ReplayLog.firstRecord(log);
+        for (int m = 0; m < (log.length - first) / ReplayLog.RECORD_SIZE; m++) {
+            int k = first + m * ReplayLog.RECORD_SIZE;
+            for (int i = 0; i < 5; i++) {
+                for (int j = 0; j < 5; j++) {
+                    if (!(i == 2 && j == 2)) {
+                        view[i][j] = (char) (log[k++] & 0xFF);
+                    }
+                }
+            }
+            agent.get_action(view);
+            if ((m + 1) % every == 0) {
+                snapshots.add(agent.snapshotWorldModel());
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args see printUsage
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            printUsage();
+        }
+        int nodeLimit = 500;
+        int every = 200;
+        int cutoff = Explore.DEFAULT_CUTOFF;
+        for (int k = 1; k < args.length; k++) {
+            if (k + 1 == args.length) {
+                printUsage();
+            }
+            switch (args[k++]) {
+                case "-limit": nodeLimit = Math.max(1, Integer.parseInt(args[k])); break;
+                case "-every": every = Math.max(1, Integer.parseInt(args[k])); break;
+                case "-cutoff": cutoff = Integer.parseInt(args[k]); break;
+                default: printUsage();
+            }
+        }
+
+        int searches = 0, hitLimit = 0, longer = 0, failures = 0;
+        for (WorldModel worldModel : snapshots(Files.readAllBytes(Paths.get(args[0])), every)) {
+            ArrayList<Coordinate> tiles = worldModel.getExploredTiles();
+            ArrayList<Coordinate> golds = worldModel.getObjectTiles('$');
+            for (int dynamiteCount : new int[]{0, 1, 3}) {
+                ArrayList<Coordinate[]> goals = new ArrayList<>();   // the goal and the gold to go through, if any
+                for (int g = 1; g <= 3; g++) {
+                    goals.add(new Coordinate[]{tiles.get((int) ((worldModel.getVersion() * 7919 + g * 131 + dynamiteCount) % tiles.size())), null});
+                }
+                if (!golds.isEmpty()) {
+                    goals.add(new Coordinate[]{new Coordinate(0, 0), golds.get(0)});
+                }
+                for (Coordinate[] goal : goals) {
+                    State start = new State(0, 0, Orientation.WEST, BlockadeSet.EMPTY, new Coordinate(0, 0), false, true, true, false, false, dynamiteCount);
+                    ResumableSearch search = new ResumableSearch(start.copy(), goal[0], worldModel, Agent.Stage.PLANNED, null, goal[1], new StateTable(), new StateArena());
+                    ArrayList<State> path = search.resume(cutoff);
+                    SearchStats stats = SearchStats.start("SMA*", Agent.Stage.PLANNED, 0, 0, goal[0]);
+                    ArrayList<State> boundedPath = MemoryBoundedAStar.findPath(start.copy(), goal[0], worldModel, Agent.Stage.PLANNED, null, goal[1], cutoff, nodeLimit, stats);
+                    searches++;
+                    if (stats.expanded > nodeLimit) {
+                        hitLimit++;
+                    }
+
+                    if (!path.isEmpty() && !boundedPath.isEmpty() && boundedPath.size() > path.size()) {
+                        longer++;
+                    }
+                    if (boundedPath.isEmpty() && stats.expanded < cutoff && (!path.isEmpty() || !search.isExhausted())) {
+                        failures++;
+                        System.out.println("Version " + worldModel.getVersion() + ", " + dynamiteCount + " dynamite, goal " + goal[0]
+                                + (goal[1] == null ? "" : " through " + goal[1]) + ": gave up after " + stats.expanded
+                                + " expansions, A* " + (path.isEmpty() ? "was still searching" : "found a path"));
+                    }
+                }
+            }
+        }
+        System.out.println(searches + " searches, " + hitLimit + " expanded more states than the limit of " + nodeLimit + ", "
+                + longer + " found a longer path than A*, " + failures + " failed");
+        if (failures > 0) {
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package pathfinding;
+
+/**
+ * Orientations of the agent, coded as the numbers 0 to 3 in the order north, west, south, east. In that order turning
+ * left adds one and turning right subtracts one (modulo 4), and the position offset of moving forward is a lookup in
+ * a small array. The letters N, W, S and E are only used when an orientation is printed.
+ */
+public final class Orientation {
+
+    public static final int NORTH = 0;
+    public static final int WEST = 1;
+    public static final int SOUTH = 2;
+    public static final int EAST = 3;
+
+    /**
+     * The position offset of moving forward in each orientation. For example: moving north gives an x-offset of 0 and
+     * a y-offset of -1.
+     */
+    private static final int[] X_OFFSET = {0, -1, 0, 1};
+    private static final int[] Y_OFFSET = {-1, 0, 1, 0};
+
+    private static final String SYMBOLS = "NWSE";
+
+    private Orientation() {
+    }
+
+    public static int xOffset(int orientation) {
+        return X_OFFSET[orientation];
+    }
+
+    public static int yOffset(int orientation) {
+        return Y_OFFSET[orientation];
+    }
+
+    /**
+     * Returns the orientation after turning left.
+     */
+    public static int turnLeft(int orientation) {
+        return (orientation + 1) & 3;
+    }
+
+    /**
+     * Returns the orientation after turning right.
+     */
+    public static int turnRight(int orientation) {
+        return (orientation + 3) & 3;
+    }
+
+    /**
+     * Returns the letter (N, W, S or E) of the given orientation.
+     */
+    public static char toChar(int orientation) {
+        return SYMBOLS.charAt(orientation);
+    }
+}
@@ -0,0 +1,220 @@
+package pathfinding;
+
+import agent.Agent;
+import agent.WorldModel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * The single threaded A* search, kept as an object so that it can be stopped when it runs out of expansions and
+ * continued later. A search that hits its cutoff keeps its open and closed sets, and resuming it with another budget
+ * carries on exactly where it stopped, as if it had been given the larger cutoff to begin with. This lets the agent
+ * keep deepening a hard search over several turns instead of doing the same work again every turn.
+ *
+ * A search is only valid for the version of the world model it was started with: the costs and successors it has
+ * stored depend on the map, so it can not be resumed once the world model has changed.
+ */
+public class ResumableSearch {
+
+    private final State startState;
+    private final Coordinate goalState;
+    private final WorldModel worldModel;
+    private final long version;
+    private final Agent.Stage stage;
+    private final ArrayList<Coordinate> legalDynamiteCoordinates;
+    private final Coordinate goldState;
+
+    private final StateTable visited;     // which states are open or closed
+    private final HashSet<State> openSet = new HashSet<>();
+    private final Expansion expansion;
+    private int expanded;
+
+    /**
+     * The path found, null while the search has not found the goal.
+     */
+    private ArrayList<State> path;
+
+    /**
+     * Starts a search, see Explore.findPath for the parameters. Nothing is searched until the search is run. The search
+     * uses the given table and arena, which must not be used by anything else for as long as the search is resumed.
+     */
+    ResumableSearch(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, StateTable visited, StateArena arena) {
+        this.startState = startState;
+        this.goalState = goalState;
+        this.worldModel = worldModel;
+        this.version = worldModel.getVersion();
+        this.stage = stage;
+        this.legalDynamiteCoordinates = legalDynamiteCoordinates == null ? null : new ArrayList<>(legalDynamiteCoordinates);
+        this.goldState = goldState;
+        this.visited = visited;
+        visited.clear();
+        arena.reset();
+        expansion = new Expansion(visited, arena, openSet, goalState, worldModel, stage, goldState);
+
+        openSet.add(startState);
+        visited.put(visited.slot(startState), startState, StateTable.OPEN);
+
+        startState.setH(startState.heuristic(goalState, worldModel, stage, goldState));
+
+        startState.setG(0);
+    }
+
+    /**
+     * Returns whether the search can be resumed to answer a search from the given start state in the given world
+     * model: the world model is the one the search was started with and has not changed since, and the start state
+     * has the same fingerprint as the one the search was started from.
+     */
+    public boolean canResume(State startState, WorldModel worldModel) {
+        return worldModel == this.worldModel && worldModel.getVersion() == version && !isExhausted() &&
+                startState.packedPosition() == this.startState.packedPosition() && startState.packedFields() == this.startState.packedFields() &&
+                startState.blockadesHash() == this.startState.blockadesHash();
+    }
+
+    /**
+     * Returns whether the search has searched every state it can reach without finding the goal, so that resuming it
+     * can never find a path.
+     */
+    public boolean isExhausted() {
+        return path == null && openSet.isEmpty();
+    }
+
+    /**
+     * Returns the number of states the search has expanded so far.
+     */
+    public int getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Continues the search, expanding at most budget more states.
+     *
+     * @param budget the maximum number of states to expand
+     * @return a list of states forming a path from the start state to the goal state, empty list if no path was found
+     * (yet)
+     * @throws IllegalStateException if the world model has changed since the search was started
+     */
+    public ArrayList<State> resume(int budget) {
+        if (worldModel.getVersion() != version) {
+            throw new IllegalStateException("The world model has changed since the search was started");
+        }
+        int expandedBefore = expanded;
+        SearchStats stats = SearchStats.start(expandedBefore == 0 ? "A*" : "A* (resumed)", stage, startState.getRelativeCoordX(), startState.getRelativeCoordY(), goalState);
+        ArrayList<State> path = run(expanded + budget, stats);
+        stats.expanded = expanded - expandedBefore;
+        stats.hitCutoff = path.isEmpty() && !isExhausted();
+        stats.finish(!path.isEmpty());
+        return path;
+    }
+
+    /**
+     * Runs the search until it finds the goal, the open set is empty or cutoff states have been expanded in total.
+     *
+     * @return a list of states forming a path from the start state to the goal state, empty list if no path was found
+     */
+    ArrayList<State> run(int cutoff, SearchStats stats) {
+        if (path != null) {
+            return Explore.reconstructPath(detach(path.get(path.size() - 1), startState));   // a copy, since the caller may change the states of the path
+        }
+        while (!openSet.isEmpty() && expanded < cutoff) {
+            stats.openSize(openSet.size());
+            State bestState = null;
+            int bestStateF = Integer.MAX_VALUE;
+            for (State state : openSet) {
+                if (state.getF() < bestStateF) {
+                    bestState = state;
+                    bestStateF = state.getF();
+                }
+            }
+            State currentState = bestState;
+            if (currentState == null) {
+                return new ArrayList<>();
+            }
+            if (Explore.isGoal(currentState, goalState, goldState)) {
+                path = Explore.reconstructPath(detach(currentState, startState));
+                return path;
+            }
+            openSet.remove(currentState);
+            visited.put(visited.slot(currentState), currentState, StateTable.CLOSED);
+            expanded++;
+            stats.expanded = expanded;
+
+            expansion.currentState = currentState;
+            currentState.forEachSuccessor(worldModel, stage, legalDynamiteCoordinates, expansion);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Handles the neighbors of the state being expanded. A neighbor is looked up by its fingerprint first, and only
+     * turned into a State (taken from the arena) if it has not been seen before.
+     */
+    private static class Expansion implements State.SuccessorSink {
+
+        private final StateTable visited;
+        private final StateArena arena;
+        private final HashSet<State> openSet;
+        private final Coordinate goalState;
+        private final WorldModel worldModel;
+        private final Agent.Stage stage;
+        private final Coordinate goldState;
+        private State currentState;
+
+        Expansion(StateTable visited, StateArena arena, HashSet<State> openSet, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, Coordinate goldState) {
+            this.visited = visited;
+            this.arena = arena;
+            this.openSet = openSet;
+            this.goalState = goalState;
+            this.worldModel = worldModel;
+            this.stage = stage;
+            this.goldState = goldState;
+        }
+
+        @Override
+        public void accept(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation, int flags, int dynamiteCount, boolean removesBlockade, int blockadeX, int blockadeY) {
+            int slot = visited.slot(State.packPosition(relativeCoordX, relativeCoordY), State.packFields(relativeAgentOrientation, flags, dynamiteCount), currentState.successorBlockadesHash(removesBlockade, blockadeX, blockadeY));
+            byte status = visited.status(slot);
+            if (status == StateTable.CLOSED) {
+                return;
+            }
+            int tentativeGScore = currentState.getG() + 1;
+            State state;
+            if (status == StateTable.ABSENT) {
+                state = arena.allocate();
+                state.reuse(relativeCoordX, relativeCoordY, relativeAgentOrientation, currentState.successorBlockades(removesBlockade, blockadeX, blockadeY), flags, dynamiteCount);
+                state.setH(state.heuristic(goalState, worldModel, stage, goldState));
+                openSet.add(state);
+                visited.put(slot, state, StateTable.OPEN);
+            } else {
+                state = visited.state(slot);    // if we generate a duplicate state, make sure we use the old one
+                if (tentativeGScore >= state.getG()) {
+                    return;
+                }
+            }
+            state.setParent(currentState);
+            state.setG(tentativeGScore);
+        }
+    }
+
+    /**
+     * Replaces the states taken from the arena on the path from startState to the given state with copies, so the path
+     * stays valid after the arena is reset by the next search. The start state and its parents are kept as they are.
+     *
+     * @param state the last state of the path
+     * @param startState the start state of the search
+     * @return the copy of the last state
+     */
+    private static State detach(State state, State startState) {
+        ArrayList<State> arenaStates = new ArrayList<>();
+        for (; state != startState; state = state.getParent()) {
+            arenaStates.add(state);
+        }
+        State parent = startState;
+        for (int i = arenaStates.size() - 1; i >= 0; i--) {
+            State copy = arenaStates.get(i).copy();
+            copy.setParent(parent);
+            parent = copy;
+        }
+        return parent;
+    }
+}
@@ -0,0 +1,128 @@
+package pathfinding;
+
+import agent.Agent;
+import agent.WorldModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Transposition cache of the single threaded A* searches done since the world last changed. The agent often asks the
+ * same question more than once while the world stays the same, for example when the simple and the complex solution
+ * search both look for a path home from the same state, or when a failed plan is tried again on the next turn without
+ * anything new having been seen. Since the search is deterministic, a search with the same world, start state, goal,
+ * stage, tiles that may be blown up and cutoff finds the same path, so the path (or the failure) is remembered and
+ * handed out again.
+ *
+ * States are compared by fingerprint, the same way StateTable compares them, and the cache is emptied as soon as it
+ * is used with another world model or another version of the world model.
+ */
+class SearchCache {
+
+    /**
+     * The maximum number of searches remembered for one version of the world.
+     */
+    private static final int MAX_ENTRIES = 64;
+
+    private WorldModel worldModel;
+    private long version;
+
+    /**
+     * The remembered searches. The value is the part of the path after the start state, an empty list if the goal is
+     * the start state, or null if no path was found.
+     */
+    private final HashMap<Key, ArrayList<State>> paths = new HashMap<>();
+
+    /**
+     * The parameters of a search that decide which path it finds.
+     */
+    private static final class Key {
+        private final long startPosition, startFields, startBlockades;
+        private final Coordinate goalState, goldState;
+        private final Agent.Stage stage;
+        private final ArrayList<Coordinate> legalDynamiteCoordinates;
+        private final int cutoff;
+
+        Key(State startState, Coordinate goalState, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff) {
+            startPosition = startState.packedPosition();
+            startFields = startState.packedFields();
+            startBlockades = startState.blockadesHash();
+            this.goalState = goalState;
+            this.goldState = goldState;
+            this.stage = stage;
+            this.legalDynamiteCoordinates = legalDynamiteCoordinates;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) object;
+            return startPosition == key.startPosition && startFields == key.startFields && startBlockades == key.startBlockades && cutoff == key.cutoff && stage == key.stage &&
+                    goalState.equals(key.goalState) && Objects.equals(goldState, key.goldState) &&
+                    Objects.equals(legalDynamiteCoordinates, key.legalDynamiteCoordinates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(startPosition, startFields, startBlockades, goalState, goldState, stage, cutoff);
+        }
+    }
+
+    /**
+     * Returns the path a search with the given parameters found, if one was done since the world last changed.
+     *
+     * @return a list of states forming a path from the start state to the goal state (starting with the start state
+     * and its parents, like the path returned by the search), an empty list if the search found no path, or null if
+     * no such search was done
+     */
+    ArrayList<State> lookup(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff) {
+        if (worldModel != this.worldModel || worldModel.getVersion() != version) {
+            paths.clear();
+            this.worldModel = worldModel;
+            version = worldModel.getVersion();
+            return null;
+        }
+        Key key = new Key(startState, goalState, stage, legalDynamiteCoordinates, goldState, cutoff);
+        if (!paths.containsKey(key)) {
+            return null;
+        }
+        ArrayList<State> rest = paths.get(key);
+        if (rest == null) {
+            return new ArrayList<>();
+        }
+        State parent = startState;
+        for (State state : rest) {     // copies, since the caller may change the states of the path
+            State copy = state.copy();
+            copy.setParent(parent);
+            parent = copy;
+        }
+        return Explore.reconstructPath(parent);
+    }
+
+    /**
+     * Remembers the path a search found.
+     *
+     * @param path the path returned by the search, empty if no path was found
+     */
+    void store(State startState, Coordinate goalState, WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, Coordinate goldState, int cutoff, ArrayList<State> path) {
+        if (worldModel != this.worldModel || worldModel.getVersion() != version || paths.size() == MAX_ENTRIES) {
+            return;
+        }
+        ArrayList<State> rest = null;
+        if (!path.isEmpty()) {
+            int start = 0;
+            while (path.get(start) != startState) {     // the path starts with the parents of the start state, if it has any
+                start++;
+            }
+            rest = new ArrayList<>();
+            for (int i = start + 1; i < path.size(); i++) {
+                rest.add(path.get(i).copy());
+            }
+        }
+        paths.put(new Key(startState, goalState, stage, legalDynamiteCoordinates == null ? null : new ArrayList<>(legalDynamiteCoordinates), goldState, cutoff), rest);
+    }
+}
@@ -0,0 +1,97 @@
+package pathfinding;
+
+import agent.Agent;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event emitted by every search in Explore, see SearchStats. The duration of the event is the
+ * duration of the search.
+ *
+ * To record: java -XX:StartFlightRecording=filename=agent.jfr ... and open the file in JDK Mission Control, or print
+ * the events with: jfr print --events pathfinding.Search agent.jfr
+ */
+@Name("pathfinding.Search")
+@Label("Search")
+@Category({"Agent", "Pathfinding"})
+@Description("A single search done by the agent")
+@StackTrace(false)
+class SearchEvent extends Event {
+
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Start X")
+    int startX;
+
+    @Label("Start Y")
+    int startY;
+
+    @Label("Goal")
+    String goal;
+
+    @Label("Nodes Expanded")
+    int expanded;
+
+    @Label("Peak Open Set Size")
+    int peakOpen;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Hit Cutoff")
+    @Description("The search stopped because it expanded as many nodes as it was allowed to")
+    boolean hitCutoff;
+
+    @Label("Answered From Cache")
+    @Description("The same search was done before in the same world, so its result was reused")
+    boolean cached;
+
+    /**
+     * Creates an event for a search that is about to start and starts timing it.
+     *
+     * @param algorithm the name of the search algorithm
+     * @param stage the stage the agent is in, null if the search does not depend on the stage
+     * @param startX the relative x coordinate the search starts from
+     * @param startY the relative y coordinate the search starts from
+     * @param goal what the search is looking for, turned into a string only if the event is recorded
+     * @return the started event
+     */
+    static SearchEvent start(String algorithm, Agent.Stage stage, int startX, int startY, Object goal) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        if (event.isEnabled()) {
+            event.algorithm = algorithm;
+            event.stage = stage == null ? null : stage.name();
+            event.startX = startX;
+            event.startY = startY;
+            event.goal = String.valueOf(goal);
+        }
+        return event;
+    }
+
+    /**
+     * Stops timing the search and commits the event if the recording wants it.
+     *
+     * @param stats the statistics of the search
+     * @param succeeded whether the search found what it was looking for
+     */
+    void finish(SearchStats stats, boolean succeeded) {
+        end();
+        if (shouldCommit()) {
+            expanded = stats.expanded;
+            peakOpen = stats.peakOpen;
+            hitCutoff = stats.hitCutoff;
+            cached = stats.cached;
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package pathfinding;
+
+import agent.Agent;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Statistics of a single search, filled in by the search as it runs. When Flight Recorder is running, the statistics
+ * are also emitted as a SearchEvent covering the duration of the search. Otherwise the SearchEvent class is never
+ * loaded, since loading the first event class starts up a good part of Flight Recorder.
+ */
+class SearchStats {
+
+    int expanded;
+    int peakOpen;
+    boolean hitCutoff;
+    boolean cached;
+
+    /**
+     * The event recording the search, null if Flight Recorder was not running when the search started.
+     */
+    private final SearchEvent event;
+
+    private SearchStats(SearchEvent event) {
+        this.event = event;
+    }
+
+    /**
+     * Starts keeping statistics for a search that is about to start.
+     *
+     * @param algorithm the name of the search algorithm
+     * @param stage the stage the agent is in, null if the search does not depend on the stage
+     * @param startX the relative x coordinate the search starts from
+     * @param startY the relative y coordinate the search starts from
+     * @param goal what the search is looking for, turned into a string only if the search is recorded
+     * @return the statistics of the search
+     */
+    static SearchStats start(String algorithm, Agent.Stage stage, int startX, int startY, Object goal) {
+        return new SearchStats(FlightRecorder.isInitialized() ? SearchEvent.start(algorithm, stage, startX, startY, goal) : null);
+    }
+
+    /**
+     * Records the size of the open set, keeping the largest size seen.
+     */
+    void openSize(int size) {
+        if (size > peakOpen) {
+            peakOpen = size;
+        }
+    }
+
+    /**
+     * Ends the search, committing its event if there is one.
+     *
+     * @param succeeded whether the search found what it was looking for
+     */
+    void finish(boolean succeeded) {
+        if (event != null) {
+            event.finish(this, succeeded);
+        }
+    }
+}
@@ -13,12 +13,12 @@ public class State {
     /**
      * Keeps track of the relative coordinates of the agent.
      */
-	private final int relativeCoordX, relativeCoordY;
+	private int relativeCoordX, relativeCoordY;
 
     /**
      * Keeps track of the orientation of the agent.
      */
-	private final char relativeAgentOrientation;
+	private int relativeAgentOrientation;
 
     /**
      * G and H values used in A* and Dijkstra.
@@ -39,27 +39,20 @@ public class State {
     /**
      * Contains coordinates for all walls that have been blown up, doors unlocked, trees cut down, dynamite picked up.
      */
-	private HashSet<Coordinate> blockadesRemoved;
+	private BlockadeSet blockadesRemoved;
 
     /**
-     * Hash maps that specify the position offset of new states when moving in a certain direction.
-     * For example: If the agent is moving north and wants to generate a new state with new coordinates,
-     * you call the get method on the hash map with 'N' as parameter and you get 0 as the x-offset and -1 as the y-offset.
+     * Bits of the inventory flags passed to a SuccessorSink, in the same order as in packedFields.
      */
-    public static final HashMap<Character, Integer> xOffset;
-    public static final HashMap<Character, Integer> yOffset;
-
-    static {
-        xOffset = new HashMap<>();
-        xOffset.put('N', 0);
-        xOffset.put('W', -1);
-        xOffset.put('S', 0);
-        xOffset.put('E', 1);
-        yOffset = new HashMap<>();
-        yOffset.put('N', -1);
-        yOffset.put('W', 0);
-        yOffset.put('S', 1);
-        yOffset.put('E', 0);
+    static final int GOLD = 1, KEY = 2, AXE = 4, RAFT = 8, ON_RAFT = 16;
+
+    /**
+     * Receives the successors generated by forEachSuccessor as primitive values, so that a search only has to create
+     * State objects for the successors it actually keeps. The removed blockades of a successor are those of its parent,
+     * plus the tile at blockadeX, blockadeY if removesBlockade is true.
+     */
+    interface SuccessorSink {
+        void accept(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation, int flags, int dynamiteCount, boolean removesBlockade, int blockadeX, int blockadeY);
     }
 
     /**
@@ -69,11 +62,11 @@ public class State {
      * @param relativeCoordY the relative y coordinate of the agent
      * @param relativeAgentOrientation the relative orientation of the agent
      */
-    public State(int relativeCoordX, int relativeCoordY, char relativeAgentOrientation) {
+    public State(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation) {
 		this.relativeCoordX = relativeCoordX;
 		this.relativeCoordY = relativeCoordY;
 		this.relativeAgentOrientation = relativeAgentOrientation;
-        blockadesRemoved = new HashSet<>(); //  doors opened, walls blown up, trees cut down
+        blockadesRemoved = BlockadeSet.EMPTY; //  doors opened, walls blown up, trees cut down
     }
 
     /**
@@ -82,7 +75,7 @@ public class State {
      * @param relativeCoordX the relative x coordinate of the agent
      * @param relativeCoordY the relative y coordinate of the agent
      * @param relativeAgentOrientation the relative orientation of the agent
-     * @param blockadesRemoved a HashSet of the blockades that have been removed
+     * @param blockadesRemoved the blockades that have been removed, shared with the new state
      * @param hasGold if the agent has collected the gold
      * @param hasKey if the agent has collected the key
      * @param hasAxe if the agent has collected the axe
@@ -90,11 +83,11 @@ public class State {
      * @param onRaft if the agent is on a raft
      * @param dynamiteCount how many dynamites the agent has
      */
-	public State(int relativeCoordX, int relativeCoordY, char relativeAgentOrientation, HashSet<Coordinate> blockadesRemoved, boolean hasGold, boolean hasKey, boolean hasAxe, boolean hasRaft, boolean onRaft, int dynamiteCount) {
-        this(relativeCoordX, relativeCoordY, relativeAgentOrientation);
-        for (Coordinate c : blockadesRemoved) {
-            this.blockadesRemoved.add(new Coordinate(c.x, c.y));
-        }
+	public State(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation, BlockadeSet blockadesRemoved, boolean hasGold, boolean hasKey, boolean hasAxe, boolean hasRaft, boolean onRaft, int dynamiteCount) {
+        this.relativeCoordX = relativeCoordX;
+        this.relativeCoordY = relativeCoordY;
+        this.relativeAgentOrientation = relativeAgentOrientation;
+        this.blockadesRemoved = blockadesRemoved;
         this.hasGold = hasGold;
         this.hasKey = hasKey;
         this.hasAxe = hasAxe;
@@ -109,7 +102,7 @@ public class State {
      * @param relativeCoordX the relative x coordinate of the agent
      * @param relativeCoordY the relative y coordinate of the agent
      * @param relativeAgentOrientation the relative orientation of the agent
-     * @param blockadesRemoved a HashSet of the blockades that have been removed
+     * @param blockadesRemoved the blockades that have been removed, not changed by this constructor
      * @param newBlockade a new coordinate to be added to blockadesRemoved
      * @param hasGold if the agent has collected the gold
      * @param hasKey if the agent has collected the key
@@ -118,21 +111,70 @@ public class State {
      * @param onRaft if the agent is on a raft
      * @param dynamiteCount how many dynamites the agent has
      */
-    public State(int relativeCoordX, int relativeCoordY, char relativeAgentOrientation, HashSet<Coordinate> blockadesRemoved, Coordinate newBlockade, boolean hasGold, boolean hasKey, boolean hasAxe, boolean hasRaft, boolean onRaft, int dynamiteCount) {
-	    this(relativeCoordX, relativeCoordY, relativeAgentOrientation, blockadesRemoved, hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount);
-        this.blockadesRemoved.add(newBlockade);
+    public State(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation, BlockadeSet blockadesRemoved, Coordinate newBlockade, boolean hasGold, boolean hasKey, boolean hasAxe, boolean hasRaft, boolean onRaft, int dynamiteCount) {
+	    this(relativeCoordX, relativeCoordY, relativeAgentOrientation, blockadesRemoved.with(newBlockade), hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount);
+    }
+
+    private State(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation, BlockadeSet blockadesRemoved, int flags, int dynamiteCount) {
+        reuse(relativeCoordX, relativeCoordY, relativeAgentOrientation, blockadesRemoved, flags, dynamiteCount);
+    }
+
+    /**
+     * Overwrites every field of the state, so that a state taken from a StateArena looks like a newly created one.
+     */
+    void reuse(int relativeCoordX, int relativeCoordY, int relativeAgentOrientation, BlockadeSet blockadesRemoved, int flags, int dynamiteCount) {
+        this.relativeCoordX = relativeCoordX;
+        this.relativeCoordY = relativeCoordY;
+        this.relativeAgentOrientation = relativeAgentOrientation;
+        this.blockadesRemoved = blockadesRemoved;
+        setFlags(flags);
+        this.dynamiteCount = dynamiteCount;
+        g = 0;
+        h = 0;
+        parent = null;
+    }
+
+    /**
+     * Returns a copy of the state with the same G, H and parent.
+     */
+    State copy() {
+        State copy = new State(relativeCoordX, relativeCoordY, relativeAgentOrientation, blockadesRemoved, getFlags(), dynamiteCount);
+        copy.g = g;
+        copy.h = h;
+        copy.parent = parent;
+        return copy;
     }
 
 	public int getRelativeCoordX() { return  relativeCoordX; }
 
     public int getRelativeCoordY() { return  relativeCoordY; }
 
-    char getRelativeAgentOrientation() { return relativeAgentOrientation; }
+    int getRelativeAgentOrientation() { return relativeAgentOrientation; }
 
     boolean hasGold() { return hasGold; }
 
+    boolean hasKey() { return hasKey; }
+
+    boolean hasAxe() { return hasAxe; }
+
+    boolean hasRaft() { return hasRaft; }
+
+    boolean isOnRaft() { return onRaft; }
+
     int getDynamiteCount() { return dynamiteCount; }
 
+    int getFlags() {
+        return (hasGold ? GOLD : 0) | (hasKey ? KEY : 0) | (hasAxe ? AXE : 0) | (hasRaft ? RAFT : 0) | (onRaft ? ON_RAFT : 0);
+    }
+
+    private void setFlags(int flags) {
+        hasGold = (flags & GOLD) != 0;
+        hasKey = (flags & KEY) != 0;
+        hasAxe = (flags & AXE) != 0;
+        hasRaft = (flags & RAFT) != 0;
+        onRaft = (flags & ON_RAFT) != 0;
+    }
+
     public void setDynamiteCount(int dynamiteCount) { this.dynamiteCount = dynamiteCount; }
 
     State getParent() { return parent; }
@@ -165,13 +207,7 @@ public class State {
     int heuristic(Coordinate goalState, WorldModel worldModel, Agent.Stage stage, Coordinate goldState) {
         int dynamiteDistance = 0;
         if (stage == Agent.Stage.PLANNED) {
-            ArrayList<Coordinate> dynamites = worldModel.getAllDynamites(blockadesRemoved);
-            for (int i = 0; i < dynamites.size() - 1; i++) {
-                dynamiteDistance += Math.abs(dynamites.get(i).x - dynamites.get(i+1).x) + Math.abs(dynamites.get(i).y - dynamites.get(i+1).y);
-            }
-            if (!dynamites.isEmpty()) {
-                dynamiteDistance += Math.abs(dynamites.get(0).x - relativeCoordX) + Math.abs(dynamites.get(0).y - relativeCoordY);
-            }
+            dynamiteDistance = worldModel.getDynamiteTourLength(relativeCoordX, relativeCoordY, blockadesRemoved);
         }
         if (goldState == null || hasGold) {
             return Math.abs(goalState.x - relativeCoordX) + Math.abs(goalState.y - relativeCoordY) + dynamiteDistance;
@@ -190,187 +226,166 @@ public class State {
      */
     ArrayList<State> generateAStarNeighbors(WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates) {
         ArrayList<State> newStates = new ArrayList<>();
+        forEachSuccessor(worldModel, stage, legalDynamiteCoordinates, (x, y, orientation, flags, dynamites, removesBlockade, blockadeX, blockadeY) -> {
+            newStates.add(new State(x, y, orientation, successorBlockades(removesBlockade, blockadeX, blockadeY), flags, dynamites));
+        });
+        return newStates;
+    }
+
+    /**
+     * Generates the neighbor states for use in A* algorithm without creating them, passing each one to the sink
+     * instead. The neighbors are passed in the same order generateAStarNeighbors returns them.
+     *
+     * @param worldModel the world model of the agent
+     * @param stage which stage the agent is currently in, determines which moves it can make
+     * @param legalDynamiteCoordinates the coordinates the agen is allowed to blow up. A value of null means any tile can be blown up
+     * @param sink receives every neighbor
+     */
+    void forEachSuccessor(WorldModel worldModel, Agent.Stage stage, ArrayList<Coordinate> legalDynamiteCoordinates, SuccessorSink sink) {
         char objectInFront = worldModel.getObjectInFront(relativeCoordX, relativeCoordY, relativeAgentOrientation);
-        Coordinate coordinateInFront = new Coordinate(relativeCoordX + xOffset.get(relativeAgentOrientation), relativeCoordY + yOffset.get(relativeAgentOrientation));
-
-        switch (relativeAgentOrientation) {
-            case 'N':
-            case 'S':
-                newStates.add(new State(relativeCoordX, relativeCoordY, 'W', blockadesRemoved, hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount));
-                newStates.add(new State(relativeCoordX, relativeCoordY, 'E', blockadesRemoved, hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount));
-                break;
-            case 'W':
-            case 'E':
-                newStates.add(new State(relativeCoordX, relativeCoordY, 'N', blockadesRemoved, hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount));
-                newStates.add(new State(relativeCoordX, relativeCoordY, 'S', blockadesRemoved, hasGold, hasKey, hasAxe, hasRaft, onRaft, dynamiteCount));
-                break;
+        int frontX = relativeCoordX + Orientation.xOffset(relativeAgentOrientation);
+        int frontY = relativeCoordY + Orientation.yOffset(relativeAgentOrientation);
+        int flags = getFlags();
+
+        if (relativeAgentOrientation == Orientation.NORTH || relativeAgentOrientation == Orientation.SOUTH) {
+            sink.accept(relativeCoordX, relativeCoordY, Orientation.WEST, flags, dynamiteCount, false, 0, 0);
+            sink.accept(relativeCoordX, relativeCoordY, Orientation.EAST, flags, dynamiteCount, false, 0, 0);
+        } else {
+            sink.accept(relativeCoordX, relativeCoordY, Orientation.NORTH, flags, dynamiteCount, false, 0, 0);
+            sink.accept(relativeCoordX, relativeCoordY, Orientation.SOUTH, flags, dynamiteCount, false, 0, 0);
         }
         if (stage == Agent.Stage.WATER) {
             if ((hasRaft || onRaft) && objectInFront == '~') {
-                newStates.add(new State(
-                        relativeCoordX + xOffset.get(relativeAgentOrientation),
-                        relativeCoordY + yOffset.get(relativeAgentOrientation),
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        hasGold,
-                        hasKey,
-                        hasAxe,
-                        false,
-                        true,
-                        dynamiteCount));
+                sink.accept(frontX, frontY, relativeAgentOrientation, flags & ~RAFT | ON_RAFT, dynamiteCount, false, 0, 0);
             }
         }
         if (stage == Agent.Stage.PLANNED || stage == Agent.Stage.LUMBERJACK || stage == Agent.Stage.BOMBERMAN) {
-            if (hasAxe && objectInFront == 'T' && !blockadesRemoved.contains(coordinateInFront)) {
-                newStates.add(new State(
-                        relativeCoordX,
-                        relativeCoordY,
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        coordinateInFront,
-                        hasGold,
-                        hasKey,
-                        hasAxe,
-                        true,
-                        onRaft,
-                        dynamiteCount));
+            if (hasAxe && objectInFront == 'T' && !blockadesRemoved.contains(frontX, frontY)) {
+                sink.accept(relativeCoordX, relativeCoordY, relativeAgentOrientation, flags | RAFT, dynamiteCount, true, frontX, frontY);
             }
-            else if (dynamiteCount > 0 && (objectInFront == '*' || objectInFront == '-' || objectInFront == 'T') && !blockadesRemoved.contains(coordinateInFront) && (legalDynamiteCoordinates == null || legalDynamiteCoordinates.contains(coordinateInFront))) {
-                newStates.add(new State(
-                        relativeCoordX,
-                        relativeCoordY,
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        coordinateInFront,
-                        hasGold,
-                        hasKey,
-                        hasAxe,
-                        hasRaft,
-                        onRaft,
-                        dynamiteCount - 1));
+            else if (dynamiteCount > 0 && (objectInFront == '*' || objectInFront == '-' || objectInFront == 'T') && !blockadesRemoved.contains(frontX, frontY) && (legalDynamiteCoordinates == null || containsCoordinate(legalDynamiteCoordinates, frontX, frontY))) {
+                sink.accept(relativeCoordX, relativeCoordY, relativeAgentOrientation, flags, dynamiteCount - 1, true, frontX, frontY);
             }
             else if ((hasRaft || onRaft) && objectInFront == '~') {
-                newStates.add(new State(
-                        relativeCoordX + xOffset.get(relativeAgentOrientation),
-                        relativeCoordY + yOffset.get(relativeAgentOrientation),
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        hasGold,
-                        hasKey,
-                        hasAxe,
-                        false,
-                        true,
-                        dynamiteCount));
+                sink.accept(frontX, frontY, relativeAgentOrientation, flags & ~RAFT | ON_RAFT, dynamiteCount, false, 0, 0);
             }
             else if (objectInFront == '$') {
-                newStates.add(new State(
-                        relativeCoordX + xOffset.get(relativeAgentOrientation),
-                        relativeCoordY + yOffset.get(relativeAgentOrientation),
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        true,
-                        hasKey,
-                        hasAxe,
-                        hasRaft,
-                        false,
-                        dynamiteCount));
+                sink.accept(frontX, frontY, relativeAgentOrientation, flags & ~ON_RAFT | GOLD, dynamiteCount, false, 0, 0);
             }
             else if (objectInFront == 'k') {
-                newStates.add(new State(
-                        relativeCoordX + xOffset.get(relativeAgentOrientation),
-                        relativeCoordY + yOffset.get(relativeAgentOrientation),
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        hasGold,
-                        true,
-                        hasAxe,
-                        hasRaft,
-                        false,
-                        dynamiteCount));
+                sink.accept(frontX, frontY, relativeAgentOrientation, flags & ~ON_RAFT | KEY, dynamiteCount, false, 0, 0);
             }
             else if (objectInFront == 'a') {
-                newStates.add(new State(
-                        relativeCoordX + xOffset.get(relativeAgentOrientation),
-                        relativeCoordY + yOffset.get(relativeAgentOrientation),
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        hasGold,
-                        hasKey,
-                        true,
-                        hasRaft,
-                        false,
-                        dynamiteCount));
+                sink.accept(frontX, frontY, relativeAgentOrientation, flags & ~ON_RAFT | AXE, dynamiteCount, false, 0, 0);
             }
-            else if (objectInFront == 'd' && !blockadesRemoved.contains(coordinateInFront)) {
-                newStates.add(new State(
-                        relativeCoordX + xOffset.get(relativeAgentOrientation),
-                        relativeCoordY + yOffset.get(relativeAgentOrientation),
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        coordinateInFront,
-                        hasGold,
-                        hasKey,
-                        hasAxe,
-                        hasRaft,
-                        false,
-                        dynamiteCount + 1));
+            else if (objectInFront == 'd' && !blockadesRemoved.contains(frontX, frontY)) {
+                sink.accept(frontX, frontY, relativeAgentOrientation, flags & ~ON_RAFT, dynamiteCount + 1, true, frontX, frontY);
             }
         }
         if (stage == Agent.Stage.PLANNED || stage == Agent.Stage.SAFE  || stage == Agent.Stage.LUMBERJACK || stage == Agent.Stage.BOMBERMAN) {
-            if (hasKey && objectInFront == '-' && !blockadesRemoved.contains(coordinateInFront)) {
-                newStates.add(new State(
-                        relativeCoordX,
-                        relativeCoordY,
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        coordinateInFront,
-                        hasGold,
-                        hasKey,
-                        hasAxe,
-                        hasRaft,
-                        onRaft,
-                        dynamiteCount));
+            if (hasKey && objectInFront == '-' && !blockadesRemoved.contains(frontX, frontY)) {
+                sink.accept(relativeCoordX, relativeCoordY, relativeAgentOrientation, flags, dynamiteCount, true, frontX, frontY);
             }
             else if (!worldModel.agentBlocked(relativeCoordX, relativeCoordY, relativeAgentOrientation, blockadesRemoved)) {
                 boolean steppingOutOfWater = false;
                 if (worldModel.getObjectAtCoordinate(relativeCoordX, relativeCoordY) == '~') {  // if the agent cut down a tree while in the water, then stepped right out of the water, make sure to remove raft
                     steppingOutOfWater = true;
                 }
-                newStates.add(new State(
-                        relativeCoordX + xOffset.get(relativeAgentOrientation),
-                        relativeCoordY + yOffset.get(relativeAgentOrientation),
-                        relativeAgentOrientation,
-                        blockadesRemoved,
-                        hasGold,
-                        hasKey,
-                        hasAxe,
-                        !steppingOutOfWater && hasRaft,
-                        false,
-                        dynamiteCount));
+                sink.accept(frontX, frontY, relativeAgentOrientation, flags & ~ON_RAFT & (steppingOutOfWater ? ~RAFT : ~0), dynamiteCount, false, 0, 0);
             }
         }
-        return newStates;
+    }
+
+    /**
+     * Returns whether the list contains the given coordinate, without creating a Coordinate to look for.
+     */
+    private static boolean containsCoordinate(ArrayList<Coordinate> coordinates, int x, int y) {
+        for (int i = 0; i < coordinates.size(); i++) {
+            if (coordinates.get(i).x == x && coordinates.get(i).y == y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the removed blockades of a successor passed to a SuccessorSink by this state.
+     */
+    BlockadeSet successorBlockades(boolean removesBlockade, int blockadeX, int blockadeY) {
+        return removesBlockade ? blockadesRemoved.with(new Coordinate(blockadeX, blockadeY)) : blockadesRemoved;
+    }
+
+    /**
+     * Returns the blockadesHash of a successor passed to a SuccessorSink by this state, without creating its set.
+     */
+    long successorBlockadesHash(boolean removesBlockade, int blockadeX, int blockadeY) {
+        return removesBlockade ? blockadesRemoved.zobristHashWith(blockadeX, blockadeY) : blockadesRemoved.zobristHash();
+    }
+
+    /**
+     * Packs the coordinates into a long, the x coordinate in the high and the y coordinate in the low 32 bits. Together
+     * with packedFields this holds every field but blockadesRemoved without loss, whatever the size of the world: two
+     * states with the same packed position, the same packed fields and the same blockadesRemoved are equal.
+     *
+     * @return the packed coordinates of the state
+     */
+    long packedPosition() {
+        return packPosition(relativeCoordX, relativeCoordY);
+    }
+
+    /**
+     * Packs the given coordinates the same way packedPosition packs the coordinates of a state.
+     */
+    static long packPosition(int relativeCoordX, int relativeCoordY) {
+        return (long) relativeCoordX << 32 | relativeCoordY & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Packs the orientation, the inventory flags and the dynamite count into a long, see packedPosition.
+     *
+     * @return the packed fields of the state
+     */
+    long packedFields() {
+        return packFields(relativeAgentOrientation, getFlags(), dynamiteCount);
+    }
+
+    /**
+     * Packs the given fields the same way packedFields packs the fields of a state.
+     */
+    static long packFields(int relativeAgentOrientation, int flags, int dynamiteCount) {
+        return (long) relativeAgentOrientation |
+                (long) flags << 2 |
+                (dynamiteCount & 0xFFFFFFFFL) << 7;
+    }
+
+    /**
+     * Returns a 64-bit hash of blockadesRemoved that does not depend on the order of the coordinates.
+     *
+     * @return the hash of blockadesRemoved
+     */
+    long blockadesHash() {
+        return blockadesRemoved.zobristHash();
     }
 
     @Override
     public String toString() {
-        return "(" + relativeCoordX + ", " + relativeCoordY + ", " + relativeAgentOrientation + ")";
+        return "(" + relativeCoordX + ", " + relativeCoordY + ", " + Orientation.toChar(relativeAgentOrientation) + ")";
     }
 
     @Override
-    public int hashCode() {
-        return Arrays.hashCode(new Object[] {
-                relativeCoordX,
-                relativeCoordY,
-                relativeAgentOrientation,
-                blockadesRemoved,
-                hasGold,
-                hasKey,
-                hasAxe,
-                hasRaft,
-                dynamiteCount,
-                onRaft
-        });
+    public int hashCode() {     // Arrays.hashCode of the fields without boxing them, with the orientation hashed as its letter so hash set order (and A* tie breaking) stays the same
+        int result = 1;
+        result = 31 * result + relativeCoordX;
+        result = 31 * result + relativeCoordY;
+        result = 31 * result + Orientation.toChar(relativeAgentOrientation);
+        result = 31 * result + blockadesRemoved.hashCode();
+        result = 31 * result + Boolean.hashCode(hasGold);
+        result = 31 * result + Boolean.hashCode(hasKey);
+        result = 31 * result + Boolean.hashCode(hasAxe);
+        result = 31 * result + Boolean.hashCode(hasRaft);
+        result = 31 * result + dynamiteCount;
+        result = 31 * result + Boolean.hashCode(onRaft);
+        return result;
     }
 
     @Override
@@ -378,15 +393,8 @@ public class State {
         if (!(object instanceof State)) {
             return false;
         }
-        if (blockadesRemoved.size() != ((State)object).blockadesRemoved.size()) {
-            return false;
-        }
-        for (Coordinate c : blockadesRemoved) {
-            if (!((State)object).blockadesRemoved.contains(c)) {
-                return false;
-            }
-        }
-        return relativeCoordX == ((State)object).relativeCoordX &&
+        return blockadesRemoved.equals(((State)object).blockadesRemoved) &&
+                relativeCoordX == ((State)object).relativeCoordX &&
                 relativeCoordY == ((State)object).relativeCoordY &&
                 relativeAgentOrientation == ((State)object).relativeAgentOrientation &&
                 hasGold == ((State)object).hasGold &&
@@ -0,0 +1,39 @@
+package pathfinding;
+
+/**
+ * Pool of State objects used by A* for the states it generates. The arena is reset at the start of every search and
+ * hands out the same objects again, so a long search does not leave thousands of states behind for the garbage
+ * collector. States taken from the arena are only valid until the next reset, which is why the search copies the
+ * states of the path it returns.
+ */
+class StateArena {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private State[] states = new State[INITIAL_CAPACITY];
+    private int used;
+
+    /**
+     * Makes every state in the arena available again.
+     */
+    void reset() {
+        used = 0;
+    }
+
+    /**
+     * Returns a state from the arena. Every field of the state must be set with State.reuse before it is used.
+     *
+     * @return an unused state
+     */
+    State allocate() {
+        if (used == states.length) {
+            State[] grown = new State[states.length * 2];
+            System.arraycopy(states, 0, grown, 0, states.length);
+            states = grown;
+        }
+        if (states[used] == null) {
+            states[used] = new State(0, 0, Orientation.NORTH);
+        }
+        return states[used++];
+    }
+}
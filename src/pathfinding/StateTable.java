@@ -0,0 +1,148 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table used by A* to keep track of which states are in the open and closed sets. A state is
+ * identified by a fixed-width fingerprint of three longs (see State.packedPosition, State.packedFields and
+ * State.blockadesHash), and the fingerprints are stored in primitive arrays with linear probing, so a lookup does not
+ * allocate and mostly touches neighbouring array elements.
+ *
+ * The table is meant to be reused between searches. Every slot is stamped with the generation it was written in, and
+ * clearing the table starts a new generation, which makes all old slots count as empty without touching the
+ * fingerprint arrays. Only the references to the states are dropped, so the table does not keep the states of the
+ * previous search alive. The slots written in the current generation are listed in order, so this takes as long as
+ * the last search was big, not as long as the table is.
+ */
+class StateTable {
+
+    static final byte ABSENT = 0;
+    static final byte OPEN = 1;
+    static final byte CLOSED = 2;
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private long[] positions;
+    private long[] fields;
+    private long[] blockades;
+    private int[] generations;
+    private byte[] statuses;
+    private State[] states;
+    private int[] usedSlots;    // the slots written in the current generation, size of them
+
+    private int generation = 1;
+    private int size;
+
+    StateTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        positions = new long[capacity];
+        fields = new long[capacity];
+        blockades = new long[capacity];
+        generations = new int[capacity];
+        statuses = new byte[capacity];
+        states = new State[capacity];
+        usedSlots = new int[capacity / 2 + 1];
+    }
+
+    /**
+     * Empties the table and drops its references to the states.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            states[usedSlots[i]] = null;
+        }
+        size = 0;
+        generation++;
+        if (generation == Integer.MAX_VALUE) {   // the stamps would start to repeat
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Returns the slot of the given state: the slot holding a state with the same fingerprint if there is one,
+     * otherwise the empty slot where the state would be put. The slot is valid until the next call to put.
+     *
+     * @param state the state to look for
+     * @return the slot of the state
+     */
+    int slot(State state) {
+        return slot(state.packedPosition(), state.packedFields(), state.blockadesHash());
+    }
+
+    int slot(long packedPosition, long packedFields, long blockadesHash) {
+        int mask = fields.length - 1;
+        int slot = mix(packedPosition, packedFields, blockadesHash) & mask;
+        while (generations[slot] == generation && (positions[slot] != packedPosition || fields[slot] != packedFields || blockades[slot] != blockadesHash)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns whether the state in the given slot is open, closed or absent.
+     */
+    byte status(int slot) {
+        return generations[slot] == generation ? statuses[slot] : ABSENT;
+    }
+
+    /**
+     * Returns the state stored in the given slot.
+     */
+    State state(int slot) {
+        return states[slot];
+    }
+
+    /**
+     * Stores the given state in the given slot with the given status.
+     *
+     * @param slot the slot returned by slot(state)
+     * @param state the state to store
+     * @param status OPEN or CLOSED
+     */
+    void put(int slot, State state, byte status) {
+        if (generations[slot] != generation) {
+            generations[slot] = generation;
+            positions[slot] = state.packedPosition();
+            fields[slot] = state.packedFields();
+            blockades[slot] = state.blockadesHash();
+            usedSlots[size++] = slot;
+        }
+        statuses[slot] = status;
+        states[slot] = state;
+        if (size * 2 > fields.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldPositions = positions;
+        long[] oldFields = fields;
+        long[] oldBlockades = blockades;
+        byte[] oldStatuses = statuses;
+        State[] oldStates = states;
+        int[] oldUsedSlots = usedSlots;
+        allocate(oldFields.length * 2);
+        for (int k = 0; k < size; k++) {
+            int i = oldUsedSlots[k];
+            int slot = slot(oldPositions[i], oldFields[i], oldBlockades[i]);
+            positions[slot] = oldPositions[i];
+            fields[slot] = oldFields[i];
+            blockades[slot] = oldBlockades[i];
+            generations[slot] = generation;
+            statuses[slot] = oldStatuses[i];
+            states[slot] = oldStates[i];
+            usedSlots[k] = slot;
+        }
+    }
+
+    private static int mix(long packedPosition, long packedFields, long blockadesHash) {
+        long h = (packedPosition * 0x9E3779B97F4A7C15L ^ packedFields) * 0x9E3779B97F4A7C15L ^ blockadesHash;
+        h ^= h >>> 32;
+        h *= 0xD6E8FEB86659FD93L;
+        return (int) (h ^ h >>> 32);
+    }
+}
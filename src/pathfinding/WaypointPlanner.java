@@ -0,0 +1,338 @@
+package pathfinding;
+
+import agent.Agent;
+import agent.WorldModel;
+
+import java.util.*;
+
+/**
+ * Two-level planner for the PLANNED stage. A flat A* over position, orientation, inventory and removed blockades
+ * explodes on large maps, but the decisions that matter are only in which order the agent visits the items, the gold
+ * and home. This planner first searches over visit orders of these points of interest, using walking distances between
+ * them that are precomputed on the grid for every combination of tools. Only the most promising visit orders are then
+ * turned into concrete paths, by running A* for each leg between two consecutive points.
+ */
+public class WaypointPlanner {
+
+    /**
+     * The maximum number of waypoint nodes expanded when searching for visit orders.
+     */
+    private static final int MAX_WAYPOINT_EXPANSIONS = 5000;
+
+    /**
+     * The maximum number of visit orders that are turned into concrete paths before giving up.
+     */
+    private static final int MAX_CANDIDATE_PLANS = 3;
+
+    /**
+     * The maximum number of items taken into account. The items closest to the agent are chosen.
+     */
+    private static final int MAX_ITEMS = 16;
+
+    /**
+     * Every tile blown up on a leg adds this many steps to the leg's cost in the waypoint search, to save dynamite.
+     */
+    private static final int DYNAMITE_PENALTY = 10;
+
+    /**
+     * The A* search of a leg may expand this many states per step of the leg's estimated length, but always at least
+     * MIN_LEG_CUTOFF. A leg that needs many more expansions than its estimate was probably badly estimated, and
+     * it is cheaper to try another visit order than to exhaust the full search budget.
+     */
+    private static final int LEG_CUTOFF_PER_STEP = 200;
+    private static final int MIN_LEG_CUTOFF = 2000;
+
+    /**
+     * A node in the waypoint search: the agent standing at a point of interest with the inventory it would have after
+     * visiting the points of interest on the way there.
+     */
+    private static class Waypoint {
+        final int poi;
+        final long visited;
+        final boolean hasGold, hasKey, canCrossWater;
+        final int dynamiteCount;
+        final int g, f;
+        final Waypoint parent;
+
+        Waypoint(int poi, long visited, boolean hasGold, boolean hasKey, boolean canCrossWater, int dynamiteCount, int g, int f, Waypoint parent) {
+            this.poi = poi;
+            this.visited = visited;
+            this.hasGold = hasGold;
+            this.hasKey = hasKey;
+            this.canCrossWater = canCrossWater;
+            this.dynamiteCount = dynamiteCount;
+            this.g = g;
+            this.f = f;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * What makes two waypoints the same node of the waypoint search: their point of interest, the points of interest
+     * visited on the way and the inventory that can't be told from those. g, f and the parent don't take part.
+     */
+    private static final class WaypointKey {
+        final int poi;
+        final long visited;
+        final boolean hasGold;
+        final int dynamiteCount;
+
+        WaypointKey(Waypoint waypoint) {
+            poi = waypoint.poi;
+            visited = waypoint.visited;
+            hasGold = waypoint.hasGold;
+            dynamiteCount = waypoint.dynamiteCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WaypointKey)) {
+                return false;
+            }
+            WaypointKey other = (WaypointKey) o;
+            return poi == other.poi && visited == other.visited && hasGold == other.hasGold && dynamiteCount == other.dynamiteCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((Long.hashCode(visited) * 31 + poi) * 31 + dynamiteCount) * 2 + (hasGold ? 1 : 0);
+        }
+    }
+
+    private final WorldModel worldModel;
+
+    /**
+     * Weight of one blown up tile in the distance maps. Larger than any number of steps, so the distance maps count
+     * dynamite first and steps second.
+     */
+    private final int wallWeight;
+
+    /**
+     * The points of interest. Index 0 is the agent's position and index 1 is home, the rest are gold and items.
+     */
+    private final ArrayList<Coordinate> pois = new ArrayList<>();
+    private final ArrayList<Character> poiTypes = new ArrayList<>();
+
+    /**
+     * Grid distance maps from each point of interest, keyed by point of interest and tool combination.
+     */
+    private final HashMap<Integer, int[]> distanceMaps = new HashMap<>();
+
+    private WaypointPlanner(WorldModel worldModel) {
+        this.worldModel = worldModel;
+        wallWeight = worldModel.getTileCount();
+    }
+
+    /**
+     * Tries to find a path from the start state to the gold and then home by first choosing in which order to visit the
+     * points of interest, then finding a concrete path for each leg.
+     *
+     * @param startState the current state of the agent
+     * @param worldModel the world model of the agent
+     * @return a list of states forming a path from the start state to the gold and home, empty list if no path is found
+     */
+    public static ArrayList<State> findPath(State startState, WorldModel worldModel) {
+        return new WaypointPlanner(worldModel).plan(startState);
+    }
+
+    private ArrayList<State> plan(State startState) {
+        Coordinate start = new Coordinate(startState.getRelativeCoordX(), startState.getRelativeCoordY());
+        addPoi(start, '^');
+        addPoi(new Coordinate(0, 0), 'h');
+        if (!startState.hasGold()) {
+            ArrayList<Coordinate> golds = worldModel.getObjectTiles('$');
+            if (golds.isEmpty()) {
+                return new ArrayList<>();
+            }
+            for (Coordinate gold : golds) {
+                addPoi(gold, '$');
+            }
+        }
+        ArrayList<Coordinate> items = new ArrayList<>();
+        ArrayList<Character> itemTypes = new ArrayList<>();
+        for (char type : new char[] {'k', 'a', 'd'}) {
+            if (type == 'k' && startState.hasKey() || type == 'a' && startState.hasAxe()) {
+                continue;   // a second key or axe adds nothing to the inventory
+            }
+            for (Coordinate item : worldModel.getObjectTiles(type)) {
+                if (!item.equals(start)) {  // the world model still shows an item the agent just picked up
+                    items.add(item);
+                    itemTypes.add(type);
+                }
+            }
+        }
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> manhattan(items.get(i), start)));
+        for (int i = 0; i < Math.min(order.length, MAX_ITEMS); i++) {
+            addPoi(items.get(order[i]), itemTypes.get(order[i]));
+        }
+
+        PriorityQueue<Waypoint> open = new PriorityQueue<>(Comparator.comparingInt(w -> w.f));
+        HashSet<WaypointKey> closed = new HashSet<>();
+        boolean canCrossWater = startState.hasAxe() || startState.hasRaft() || startState.isOnRaft();
+        open.add(new Waypoint(0, 1, startState.hasGold(), startState.hasKey(), canCrossWater, startState.getDynamiteCount(), 0, 0, null));
+        int expansions = 0;
+        int candidates = 0;
+        while (!open.isEmpty() && expansions < MAX_WAYPOINT_EXPANSIONS && candidates < MAX_CANDIDATE_PLANS) {
+            Waypoint current = open.poll();
+            if (current.poi == 1 && current.hasGold) {
+                candidates++;
+                ArrayList<State> path = expand(startState, current);
+                if (!path.isEmpty()) {
+                    return path;
+                }
+                continue;
+            }
+            if (!closed.add(new WaypointKey(current))) {
+                continue;
+            }
+            expansions++;
+            for (int next = 1; next < pois.size(); next++) {
+                if ((current.visited & 1L << next) != 0 || (next == 1 && !current.hasGold) || (poiTypes.get(next) == '$' && current.hasGold)) {
+                    continue;   // only go home with the gold, and only go for the gold without it
+                }
+                int distance = distance(current, next);
+                if (distance < 0) {
+                    continue;
+                }
+                int dynamiteUsed = distance / wallWeight;
+                char type = poiTypes.get(next);
+                int g = current.g + distance % wallWeight + DYNAMITE_PENALTY * dynamiteUsed;
+                Waypoint waypoint = new Waypoint(
+                        next,
+                        current.visited | 1L << next,
+                        current.hasGold || type == '$',
+                        current.hasKey || type == 'k',
+                        current.canCrossWater || type == 'a',
+                        current.dynamiteCount - dynamiteUsed + (type == 'd' ? 1 : 0),
+                        g,
+                        g + remainingEstimate(next, current.hasGold || type == '$'),
+                        current);
+                open.add(waypoint);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private void addPoi(Coordinate coordinate, char type) {
+        pois.add(coordinate);
+        poiTypes.add(type);
+    }
+
+    /**
+     * Estimates the remaining cost from a point of interest: through the closest gold and home, or just home.
+     */
+    private int remainingEstimate(int poi, boolean hasGold) {
+        if (hasGold) {
+            return manhattan(pois.get(poi), pois.get(1));
+        }
+        int best = Integer.MAX_VALUE;
+        for (int i = 2; i < pois.size(); i++) {
+            if (poiTypes.get(i) == '$') {
+                best = Math.min(best, manhattan(pois.get(poi), pois.get(i)) + manhattan(pois.get(i), pois.get(1)));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the least-dynamite distance of going from a waypoint to another point of interest with the waypoint's
+     * tools (see distanceMap), or -1 if the leg is impossible or needs more dynamite than the waypoint has.
+     */
+    private int distance(Waypoint from, int to) {
+        int[] distances = distanceMap(from.poi, from.hasKey, from.canCrossWater);
+        Coordinate goal = pois.get(to);
+        int distance = distances[index(goal.x, goal.y)];
+        if (distance < 0 || distance / wallWeight > from.dynamiteCount) {
+            return -1;
+        }
+        return distance;
+    }
+
+    /**
+     * Returns a map of distances from the given point of interest to every tile, using Dijkstra's algorithm over the
+     * tiles that are not blocked with the given tools. Walls, trees and doors can also be entered by blowing them up.
+     * A distance is stored as (number of blown up tiles) * wallWeight + (number of steps), so paths using as few
+     * dynamite as possible are preferred. A tile that cannot be reached has the distance -1.
+     */
+    private int[] distanceMap(int poi, boolean hasKey, boolean canCrossWater) {
+        int key = poi * 4 + (hasKey ? 2 : 0) + (canCrossWater ? 1 : 0);
+        int[] distances = distanceMaps.get(key);
+        if (distances != null) {
+            return distances;
+        }
+        Agent.Stage stage = canCrossWater ? Agent.Stage.LUMBERJACK : Agent.Stage.SAFE;    // LUMBERJACK lets the agent through trees and water
+        distances = new int[worldModel.getTileCount()];
+        Arrays.fill(distances, -1);
+        PriorityQueue<Long> queue = new PriorityQueue<>();     // distance in the upper 32 bits, tile index in the lower
+        Coordinate start = pois.get(poi);
+        distances[index(start.x, start.y)] = 0;
+        queue.add((long) index(start.x, start.y));
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int distance = (int) (entry >>> 32);
+            int current = (int) entry;
+            if (distance != distances[current]) {
+                continue;   // an outdated queue entry
+            }
+            int x = worldModel.getTileX(current);
+            int y = worldModel.getTileY(current);
+            for (int direction = 0; direction < 4; direction++) {
+                int neighborX = x + (direction == 0 ? -1 : direction == 2 ? 1 : 0);
+                int neighborY = y + (direction == 1 ? -1 : direction == 3 ? 1 : 0);
+                char object = worldModel.getObjectAtCoordinate(neighborX, neighborY);
+                int cost;
+                if (!worldModel.positionBlocked(neighborX, neighborY, hasKey, stage)) {
+                    cost = 1;
+                } else if (object == '*' || object == 'T' || object == '-') {
+                    cost = wallWeight + 1;
+                } else {
+                    continue;
+                }
+                int neighbor = index(neighborX, neighborY);
+                if (distances[neighbor] < 0 || distance + cost < distances[neighbor]) {
+                    distances[neighbor] = distance + cost;
+                    queue.add((long) (distance + cost) << 32 | neighbor);
+                }
+            }
+        }
+        distanceMaps.put(key, distances);
+        return distances;
+    }
+
+    /**
+     * Turns a visit order into a concrete path by running A* for each leg, starting each leg from the last state of
+     * the previous one. Since the start state of a leg keeps its parent, the path of the last leg contains all legs.
+     *
+     * @return the concrete path, empty list if a leg could not be found
+     */
+    private ArrayList<State> expand(State startState, Waypoint goal) {
+        ArrayList<Waypoint> legs = new ArrayList<>();
+        for (Waypoint waypoint = goal; waypoint.parent != null; waypoint = waypoint.parent) {
+            legs.add(waypoint);
+        }
+        Collections.reverse(legs);
+        State legStart = startState;
+        ArrayList<State> path = new ArrayList<>();
+        for (Waypoint leg : legs) {
+            int cutoff = Math.min(Explore.DEFAULT_CUTOFF, Math.max(MIN_LEG_CUTOFF, LEG_CUTOFF_PER_STEP * (leg.g - leg.parent.g)));
+            path = Explore.findPath(legStart, pois.get(leg.poi), worldModel, Agent.Stage.PLANNED, null, null, cutoff);
+            if (path.isEmpty()) {
+                return path;
+            }
+            legStart = path.get(path.size() - 1);
+        }
+        return path;
+    }
+
+    private static int manhattan(Coordinate a, Coordinate b) {
+        return Math.abs(a.x - b.x) + Math.abs(a.y - b.y);
+    }
+
+    private int index(int relativeCoordX, int relativeCoordY) {
+        return worldModel.getTileIndex(relativeCoordX, relativeCoordY);
+    }
+}